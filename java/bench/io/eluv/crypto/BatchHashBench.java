@@ -0,0 +1,82 @@
+package io.eluv.crypto;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.web3j.crypto.Hash;
+
+/**
+ * Keccak-256 of batches of token sized payloads: one web3j Hash.sha3 per
+ * message and {@link Keccak256Batch}.
+ * <p>
+ * The Vector API lanes are only used on JDK 17+ with
+ * {@code -jvmArgsAppend "--add-modules jdk.incubator.vector"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchHashBench {
+
+    @Param({ "1", "8", "64" })
+    int      batch;
+
+    @Param({ "300" })
+    int      size;
+
+    byte[][] inputs;
+    int[]    offsets;
+    int[]    lengths;
+    byte[]   out;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(1);
+        inputs = new byte[batch][];
+        offsets = new int[batch];
+        lengths = new int[batch];
+        for (int i = 0; i < batch; i++) {
+            // payloads of slightly different sizes, as tokens are
+            inputs[i] = new byte[size - 20 + rnd.nextInt(40)];
+            rnd.nextBytes(inputs[i]);
+            lengths[i] = inputs[i].length;
+        }
+        out = new byte[batch * Keccak256.DIGEST_LENGTH];
+    }
+
+    @Benchmark
+    public void sha3(Blackhole bh) {
+        for (byte[] in : inputs) {
+            bh.consume(Hash.sha3(in));
+        }
+    }
+
+    @Benchmark
+    public byte[] keccak256() {
+        for (int i = 0; i < batch; i++) {
+            Keccak256.hash(inputs[i], 0, lengths[i], out, i * Keccak256.DIGEST_LENGTH);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public byte[] keccak256Batch() {
+        Keccak256Batch.hash(inputs, offsets, lengths, out, 0);
+        return out;
+    }
+
+}
@@ -0,0 +1,81 @@
+package io.eluv.crypto;
+
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.eluv.format.eat.BenchData;
+
+/**
+ * Signing a burst of digests with a key held in a {@link LocalKms} with the
+ * given round-trip latency, through a {@link BatchingSigner}: batches of 1 are
+ * one request per digest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchingSignerBench {
+
+    static final String KEY_ID = "ikms_bench";
+
+    @Param({ "1", "5" })
+    int            latencyMillis;
+
+    @Param({ "1", "16", "64" })
+    int            maxBatchSize;
+
+    @Param({ "256" })
+    int            burst;
+
+    LocalKms       kms;
+    BatchingSigner signer;
+    byte[][]       digests;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        kms = new LocalKms(latencyMillis, TimeUnit.MILLISECONDS).withKey(KEY_ID, BenchData.PK);
+        signer = new BatchingSigner.Builder(kms, KEY_ID)
+            .withMaxBatchSize(maxBatchSize)
+            .withMaxDelay(1, TimeUnit.MILLISECONDS)
+            .build();
+        Random rnd = new Random(1);
+        digests = new byte[burst][32];
+        for (byte[] d : digests) {
+            rnd.nextBytes(d);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        signer.close();
+        kms.close();
+    }
+
+    @Benchmark
+    public Object signBurst() {
+        @SuppressWarnings("unchecked")
+        CompletableFuture<byte[]>[] futures = new CompletableFuture[burst];
+        for (int i = 0; i < burst; i++) {
+            futures[i] = signer.signAsync(digests[i]);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+
+}
@@ -0,0 +1,55 @@
+package io.eluv.crypto;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.Hash;
+
+/**
+ * Keccak-256 hashing of token payloads before signing: web3j and the
+ * allocation-free {@link Keccak256}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashBench {
+
+    // payload sizes of tokens with small to large contexts
+    @Param({ "200", "500", "3000" })
+    int    size;
+
+    byte[] data;
+    byte[] out = new byte[Keccak256.DIGEST_LENGTH];
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(1).nextBytes(data);
+    }
+
+    @Benchmark
+    public byte[] sha3() {
+        return Hash.sha3(data);
+    }
+
+    @Benchmark
+    public byte[] keccak256() {
+        Keccak256.hash(data, 0, data.length, out, 0);
+        return out;
+    }
+
+}
@@ -0,0 +1,55 @@
+package io.eluv.crypto;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.web3j.crypto.Hash;
+
+import io.eluv.format.eat.BenchData;
+
+/**
+ * Signing of a digest with each of the signers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignerBench {
+
+    @Param({ "KeyPairSigner", "PrivateKey", "FastPrivateKey", "Secp256k1" })
+    String signer;
+
+    Signer sk;
+    byte[] digest;
+
+    @Setup
+    public void setup() throws Exception {
+        sk = BenchData.signer(signer);
+        digest = Hash.sha3("token payload".getBytes());
+    }
+
+    @Benchmark
+    public byte[] sign() throws SignException {
+        return sk.sign(digest);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] signThreads() throws SignException {
+        return sk.sign(digest);
+    }
+
+}
@@ -0,0 +1,60 @@
+package io.eluv.flate;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.eluv.format.eat.BenchData;
+
+/**
+ * Compression of JSON token data - as done for compressed token formats.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlateBench {
+
+    @Param({ "1", "10", "100" })
+    int    ctxSize;
+
+    byte[] raw;
+    byte[] compressed;
+
+    @Setup
+    public void setup() throws Exception {
+        raw = BenchData.tokenDataJson(ctxSize);
+        compressed = Flate.compressData(raw);
+    }
+
+    @Benchmark
+    public byte[] compressData() throws IOException {
+        return Flate.compressData(raw);
+    }
+
+    @Benchmark
+    public byte[] decompressData() throws IOException {
+        return Flate.decompressData(compressed);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] compressDataThreads() throws IOException {
+        return Flate.compressData(raw);
+    }
+
+}
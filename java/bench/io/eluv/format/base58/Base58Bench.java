@@ -0,0 +1,64 @@
+package io.eluv.format.base58;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base58 encoding of token payloads with the pure java {@link FastBase58}, the
+ * native library and the original {@link Base58}.
+ * <p>
+ * The native variant fails when the library is not available.
+ * 
+ * @see Base58DecodeBench
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base58Bench {
+
+    @Param({ "java", "native", "legacy" })
+    String impl;
+
+    // signature and data of tokens with small to large contexts
+    @Param({ "265", "565", "3065" })
+    int    size;
+
+    byte[] data;
+
+    @Setup
+    public void setup() {
+        if (impl.equals("native") && !NativeB58Encoder.hasLib()) {
+            throw new IllegalStateException("native library not available", NativeB58Encoder.loadError());
+        }
+        data = new byte[size];
+        new Random(1).nextBytes(data);
+    }
+
+    @Benchmark
+    public String encode() {
+        switch (impl) {
+        case "native":
+            return NativeB58Encoder.encode(data);
+        case "legacy":
+            return Base58.encode(data);
+        default:
+            return FastBase58.encode(data);
+        }
+    }
+
+}
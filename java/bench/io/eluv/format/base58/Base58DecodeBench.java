@@ -0,0 +1,58 @@
+package io.eluv.format.base58;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base58 decoding of token payloads with the pure java {@link FastBase58} and
+ * the original {@link Base58} - the native library does not decode.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base58DecodeBench {
+
+    @Param({ "java", "legacy" })
+    String impl;
+
+    // signature and data of tokens with small to large contexts
+    @Param({ "265", "565", "3065" })
+    int    size;
+
+    String encoded;
+    byte[] out;
+
+    @Setup
+    public void setup() {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        encoded = FastBase58.encode(data);
+        out = new byte[FastBase58.maxDecodedLength(encoded.length())];
+    }
+
+    @Benchmark
+    public int decode() {
+        switch (impl) {
+        case "legacy":
+            return Base58.decode(encoded).length;
+        default:
+            return FastBase58.decode(encoded, 0, encoded.length(), out, 0);
+        }
+    }
+
+}
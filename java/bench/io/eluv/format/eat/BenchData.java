@@ -0,0 +1,87 @@
+package io.eluv.format.eat;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+import io.eluv.crypto.Crypto;
+import io.eluv.crypto.FastPrivateKey;
+import io.eluv.crypto.KeysException;
+import io.eluv.crypto.PrivateKey;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.Signer;
+
+/**
+ * BenchData provides the inputs shared by the benchmarks: signers, IDs and
+ * token data with a context of a given size.
+ */
+public class BenchData {
+
+    public static final String PK     = "c205dfefd9885f368684ecdeb4e8079ba9d16350403c848da26f3106b83c18e6";
+    public static final String SPC_ID = "ispc329GX6UVyuWzwPzqDHm5shxfNgrc";
+    public static final String LIB_ID = "ilib329GX6UVyuWzwPzqDHm5shxfNgrc";
+    public static final String Q_ID   = "iq__329GX6UVyuWzwPzqDHm5shxfNgrc";
+
+    /**
+     * Returns a signer of the given type: KeyPairSigner, PrivateKey,
+     * FastPrivateKey or Secp256k1 (native).
+     */
+    public static Signer signer(String type) throws KeysException {
+        switch (type) {
+        case "KeyPairSigner":
+            return new Signer.KeyPairSigner(Crypto.KeyPairFrom(PK));
+        case "PrivateKey":
+            return new PrivateKey(Crypto.KeyPairFrom(PK));
+        case "FastPrivateKey":
+            return new FastPrivateKey(PK);
+        case "Secp256k1":
+            return new Secp256k1(PK);
+        default:
+            throw new IllegalArgumentException("unknown signer type " + type);
+        }
+    }
+
+    /**
+     * Returns a context of the given number of entries - the first one being
+     * the {"foo": "bar"} context of TokenBench.
+     */
+    public static HashMap<String, Object> context(int size) {
+        HashMap<String, Object> ctx = new HashMap<String, Object>();
+        if (size > 0) {
+            ctx.put("foo", "bar");
+        }
+        for (int i = 1; i < size; i++) {
+            ctx.put("key" + i, i % 2 == 0 ? (Object) ("value-" + i) : (Object) Long.valueOf(i * 1000L));
+        }
+        return ctx;
+    }
+
+    /**
+     * Returns the data of an editor-signed token with a context of the given
+     * size.
+     */
+    public static TokenData tokenData(int ctxSize) throws TokenException {
+        TokenFactory.EditorSigned es = editorSigned(ctxSize, TokenFormat.JSON);
+        TokenData td = es.mToken.mTokenData;
+        td.EthAddr = new byte[20];
+        return td;
+    }
+
+    /**
+     * Returns the JSON encoding of {@link #tokenData(int)}.
+     */
+    public static byte[] tokenDataJson(int ctxSize) throws TokenException, IOException {
+        return TokenDataJson.encode(tokenData(ctxSize));
+    }
+
+    /**
+     * Returns a new builder of an editor-signed token with a context of the
+     * given size.
+     */
+    public static TokenFactory.EditorSigned editorSigned(int ctxSize, TokenFormat format) throws TokenException {
+        return new TokenFactory.EditorSigned(SPC_ID, LIB_ID, Q_ID, format)
+            .withExpiresIn(TokenFactory.HOUR * 24)
+            .withDelegationId(Q_ID)
+            .withContext(context(ctxSize));
+    }
+
+}
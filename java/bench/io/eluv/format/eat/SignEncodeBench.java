@@ -0,0 +1,79 @@
+package io.eluv.format.eat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.eluv.crypto.Signer;
+
+/**
+ * Full issuance of editor-signed tokens: building, serialization, compression,
+ * hashing, signing and Base58 encoding.
+ * <p>
+ * The '*Threads' variants run on as many threads as there are processors,
+ * sharing the signer and the template.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignEncodeBench {
+
+    @Param({ "1", "10", "100" })
+    int                  ctxSize;
+
+    @Param({ "JSON", "JSON_COMPRESSED" })
+    TokenFormat          format;
+
+    @Param({ "Secp256k1", "FastPrivateKey" })
+    String               signer;
+
+    Signer               sk;
+    EditorSignedTemplate template;
+
+    @Setup
+    public void setup() throws Exception {
+        sk = BenchData.signer(signer);
+        template = new EditorSignedTemplate.Builder(BenchData.SPC_ID, BenchData.LIB_ID, BenchData.Q_ID, format)
+            .withExpiresIn(TokenFactory.HOUR * 24)
+            .withDelegationId(BenchData.Q_ID)
+            .withContext(BenchData.context(ctxSize))
+            .build();
+    }
+
+    @Benchmark
+    public String signEncode() throws TokenException {
+        return BenchData.editorSigned(ctxSize, format).signEncode(sk);
+    }
+
+    @Benchmark
+    public String signEncodeTemplate() throws TokenException {
+        return template.signEncode(sk);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String signEncodeThreads() throws TokenException {
+        return BenchData.editorSigned(ctxSize, format).signEncode(sk);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String signEncodeTemplateThreads() throws TokenException {
+        return template.signEncode(sk);
+    }
+
+}
@@ -0,0 +1,50 @@
+package io.eluv.format.eat;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serialization of token data - the first stage of token issuance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenDataBench {
+
+    @Param({ "1", "10", "100" })
+    int       ctxSize;
+
+    TokenData td;
+    byte[]    json;
+
+    @Setup
+    public void setup() throws Exception {
+        td = BenchData.tokenData(ctxSize);
+        json = TokenDataJson.encode(td);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return TokenDataJson.encode(td);
+    }
+
+    @Benchmark
+    public TokenData decodeJson() throws IOException {
+        return TokenDataJson.decode(json, 0, json.length);
+    }
+}
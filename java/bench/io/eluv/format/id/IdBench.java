@@ -0,0 +1,47 @@
+package io.eluv.format.id;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.eluv.format.eat.BenchData;
+
+/**
+ * Parsing and formatting of IDs - done for the space, library and content IDs
+ * of every token.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IdBench {
+
+    Id id;
+
+    @Setup
+    public void setup() {
+        id = new Id(BenchData.Q_ID);
+    }
+
+    @Benchmark
+    public Id parse() {
+        return new Id(BenchData.Q_ID);
+    }
+
+    @Benchmark
+    public String format() {
+        return id.toString();
+    }
+
+}
@@ -0,0 +1,395 @@
+package io.eluv.crypto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * BatchingSigner is a signer for keys held in a {@link Kms}: instead of one
+ * round-trip per digest, digests are accumulated and sent in a single
+ * request.
+ * <p>
+ * A batch is sent as soon as it holds {@code maxBatchSize} digests, or when
+ * the oldest pending digest waited for {@code maxDelay}. Up to
+ * {@code maxInFlight} batches are pending at the KMS at the same time; further
+ * digests keep accumulating until one of them completes. A request the KMS
+ * does not answer within the timeout fails, which frees its place.
+ * <p>
+ * {@link #signAsync(byte[])} completes a future per digest. {@link #sign(byte[])}
+ * blocks until the signature arrives and batches digests signed concurrently,
+ * for instance by the threads of a {@code TokenService}.
+ * <p>
+ * A BatchingSigner can be shared by many threads. It should be closed when no
+ * longer used.
+ */
+public class BatchingSigner implements Signer, AutoCloseable {
+
+    private static final int DIGEST_LENGTH = 32;
+
+    private final Kms                      mKms;
+    private final String                   mKeyId;
+    private final byte[]                   mAddress;
+    private final int                      mMaxBatchSize;
+    private final long                     mMaxDelayNanos;
+    private final int                      mMaxInFlight;
+    private final long                     mTimeoutNanos;
+    private final ScheduledExecutorService mTimer;
+    private final LongAdder                mBatches = new LongAdder();
+
+    // guarded by mLock
+    private final Object                   mLock    = new Object();
+    private List<Pending>                  mPending = new ArrayList<Pending>();
+    private long                           mPendingSince;
+    private int                            mInFlight;
+    private ScheduledFuture<?>             mFlushTask;
+    private boolean                        mClosed;
+
+    private static class Pending {
+        final byte[]                    mDigest;
+        final CompletableFuture<byte[]> mFuture = new CompletableFuture<byte[]>();
+
+        Pending(byte[] digest) {
+            mDigest = digest;
+        }
+    }
+
+    private BatchingSigner(Builder builder) throws SignException {
+        mKms = builder.mKms;
+        mKeyId = builder.mKeyId;
+        mAddress = mKms.getAddress(mKeyId);
+        mMaxBatchSize = builder.mMaxBatchSize;
+        mMaxDelayNanos = builder.mMaxDelayNanos;
+        mMaxInFlight = builder.mMaxInFlight;
+        mTimeoutNanos = builder.mTimeoutNanos;
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "elv-batching-signer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        mTimer = timer;
+    }
+
+    @Override
+    public byte[] getAddress() {
+        return mAddress.clone();
+    }
+
+    /**
+     * Signs the given digest, waiting for the batch it is part of.
+     *
+     * @throws SignException if signing failed or timed out
+     */
+    @Override
+    public byte[] sign(byte[] digestHash) throws SignException {
+        try {
+            return signAsync(digestHash).get(mTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SignException) {
+                throw (SignException) cause;
+            }
+            throw new SignException("signing error", cause);
+        } catch (TimeoutException e) {
+            throw new SignException("signing timed out", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SignException("interrupted", e);
+        }
+    }
+
+    /**
+     * Adds the given digest to the next batch.
+     *
+     * @param digestHash the 32 bytes digest
+     * @return a future of the signature, failing with a {@link SignException}
+     */
+    public CompletableFuture<byte[]> signAsync(byte[] digestHash) {
+        Pending p = new Pending(digestHash == null ? null : digestHash.clone());
+        if (digestHash == null || digestHash.length != DIGEST_LENGTH) {
+            p.mFuture.completeExceptionally(new SignException("invalid digest"));
+            return p.mFuture;
+        }
+        List<Pending> batch = null;
+        synchronized (mLock) {
+            if (mClosed) {
+                p.mFuture.completeExceptionally(new SignException("signer closed"));
+                return p.mFuture;
+            }
+            if (mPending.isEmpty()) {
+                mPendingSince = System.nanoTime();
+            }
+            mPending.add(p);
+            if (mPending.size() >= mMaxBatchSize) {
+                batch = take();
+            }
+            scheduleFlush();
+        }
+        if (batch != null) {
+            send(batch);
+        }
+        return p.mFuture;
+    }
+
+    /**
+     * @return the number of batches sent
+     */
+    public long getBatchCount() {
+        return mBatches.sum();
+    }
+
+    /**
+     * @return the number of batches pending at the KMS
+     */
+    public int getInFlight() {
+        synchronized (mLock) {
+            return mInFlight;
+        }
+    }
+
+    // removes the next batch from the pending digests - null if too many
+    // batches are in flight
+    private List<Pending> take() {
+        if (mPending.isEmpty() || mInFlight >= mMaxInFlight) {
+            return null;
+        }
+        List<Pending> batch;
+        if (mPending.size() <= mMaxBatchSize) {
+            batch = mPending;
+            mPending = new ArrayList<Pending>();
+        } else {
+            List<Pending> head = mPending.subList(0, mMaxBatchSize);
+            batch = new ArrayList<Pending>(head);
+            head.clear();
+            // the rest waited as long as the batch
+        }
+        mInFlight++;
+        return batch;
+    }
+
+    private void scheduleFlush() {
+        if (mPending.isEmpty()) {
+            if (mFlushTask != null) {
+                mFlushTask.cancel(false);
+                mFlushTask = null;
+            }
+            return;
+        }
+        if (mFlushTask == null) {
+            long delay = mPendingSince + mMaxDelayNanos - System.nanoTime();
+            mFlushTask = mTimer.schedule(this::flushDue, Math.max(0, delay), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flushDue() {
+        List<Pending> batch;
+        synchronized (mLock) {
+            mFlushTask = null;
+            batch = take();
+            if (batch == null) {
+                // too many batches in flight: sent when one completes
+                return;
+            }
+            scheduleFlush();
+        }
+        send(batch);
+    }
+
+    private void send(List<Pending> batch) {
+        mBatches.increment();
+        byte[][] digests = new byte[batch.size()][];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = batch.get(i).mDigest;
+        }
+        CompletableFuture<byte[][]> f;
+        try {
+            f = mKms.signBatch(mKeyId, digests);
+        } catch (Throwable t) {
+            f = new CompletableFuture<byte[][]>();
+            f.completeExceptionally(t);
+        }
+        // a lost or hung request must not keep its place in flight forever
+        CompletableFuture<byte[][]> request = f;
+        ScheduledFuture<?> timeout = null;
+        if (!f.isDone()) {
+            try {
+                timeout = mTimer.schedule(
+                    () -> request.completeExceptionally(new SignException("kms request timed out")),
+                    mTimeoutNanos,
+                    TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // closed: the timer only runs the timeouts already scheduled
+            }
+        }
+        ScheduledFuture<?> pendingTimeout = timeout;
+        f.whenComplete((sigs, err) -> {
+            if (pendingTimeout != null) {
+                pendingTimeout.cancel(false);
+            }
+            // send the next batch before completing the callers of this one
+            List<Pending> next;
+            synchronized (mLock) {
+                mInFlight--;
+                next = mPending.size() >= mMaxBatchSize
+                    || mClosed
+                    || System.nanoTime() - mPendingSince >= mMaxDelayNanos
+                    ? take()
+                    : null;
+                scheduleFlush();
+            }
+            if (next != null) {
+                send(next);
+            }
+            complete(batch, sigs, err);
+        });
+    }
+
+    private static void complete(List<Pending> batch, byte[][] sigs, Throwable err) {
+        if (err == null && (sigs == null || sigs.length != batch.size())) {
+            err = new SignException("expected " + batch.size() + " signatures");
+        }
+        if (err != null) {
+            SignException e = err instanceof SignException
+                ? (SignException) err
+                : new SignException("kms error", err);
+            for (Pending p : batch) {
+                p.mFuture.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < sigs.length; i++) {
+            batch.get(i).mFuture.complete(sigs[i]);
+        }
+    }
+
+    /**
+     * Sends the pending digests and stops accepting new ones.
+     */
+    @Override
+    public void close() {
+        List<List<Pending>> batches = new ArrayList<List<Pending>>();
+        synchronized (mLock) {
+            mClosed = true;
+            if (mFlushTask != null) {
+                mFlushTask.cancel(false);
+                mFlushTask = null;
+            }
+            // regardless of the batches in flight
+            while (!mPending.isEmpty()) {
+                int n = Math.min(mPending.size(), mMaxBatchSize);
+                List<Pending> head = mPending.subList(0, n);
+                batches.add(new ArrayList<Pending>(head));
+                head.clear();
+                mInFlight++;
+            }
+        }
+        for (List<Pending> batch : batches) {
+            send(batch);
+        }
+        mTimer.shutdown();
+    }
+
+    /**
+     * Builder of BatchingSigner.
+     */
+    public static class Builder {
+        private final Kms    mKms;
+        private final String mKeyId;
+        private int          mMaxBatchSize  = 64;
+        private long         mMaxDelayNanos = TimeUnit.MILLISECONDS.toNanos(2);
+        private int          mMaxInFlight   = 4;
+        private long         mTimeoutNanos  = TimeUnit.SECONDS.toNanos(30);
+
+        /**
+         * Construct a new Builder.
+         *
+         * @param kms   the KMS
+         * @param keyId the ID of the key in the KMS
+         */
+        public Builder(Kms kms, String keyId) {
+            if (kms == null || keyId == null) {
+                throw new IllegalArgumentException("kms and key ID are required");
+            }
+            mKms = kms;
+            mKeyId = keyId;
+        }
+
+        /**
+         * Set the maximum number of digests per request - 64 by default.
+         *
+         * @param maxBatchSize the maximum batch size
+         * @return this Builder
+         */
+        public Builder withMaxBatchSize(int maxBatchSize) {
+            if (maxBatchSize <= 0) {
+                throw new IllegalArgumentException("max batch size must be positive");
+            }
+            mMaxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Set how long a digest may wait for others before its batch is sent -
+         * 2 millis by default.
+         *
+         * @param maxDelay the maximum delay
+         * @param unit     the unit of the delay
+         * @return this Builder
+         */
+        public Builder withMaxDelay(long maxDelay, TimeUnit unit) {
+            if (maxDelay < 0) {
+                throw new IllegalArgumentException("negative delay: " + maxDelay);
+            }
+            mMaxDelayNanos = unit.toNanos(maxDelay);
+            return this;
+        }
+
+        /**
+         * Set the maximum number of batches pending at the KMS at the same
+         * time - 4 by default.
+         *
+         * @param maxInFlight the maximum number of batches in flight
+         * @return this Builder
+         */
+        public Builder withMaxInFlight(int maxInFlight) {
+            if (maxInFlight <= 0) {
+                throw new IllegalArgumentException("max in flight must be positive");
+            }
+            mMaxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Set how long {@link BatchingSigner#sign(byte[])} waits for a
+         * signature, and a request to the KMS may take before it fails - 30
+         * seconds by default.
+         *
+         * @param timeout the timeout
+         * @param unit    the unit of the timeout
+         * @return this Builder
+         */
+        public Builder withTimeout(long timeout, TimeUnit unit) {
+            if (timeout <= 0) {
+                throw new IllegalArgumentException("timeout must be positive");
+            }
+            mTimeoutNanos = unit.toNanos(timeout);
+            return this;
+        }
+
+        /**
+         * @return the signer
+         * @throws SignException if the address of the key can't be retrieved
+         */
+        public BatchingSigner build() throws SignException {
+            return new BatchingSigner(this);
+        }
+    }
+}
@@ -2,9 +2,11 @@ package io.eluv.crypto;
 
 import java.math.BigInteger;
 
+import org.bitcoin.NativeSecp256k1;
+import org.bitcoin.Secp256k1Context;
 import org.bouncycastle.util.Arrays;
+import org.web3j.crypto.ECDSASignature;
 import org.web3j.crypto.ECKeyPair;
-import org.web3j.crypto.Hash;
 import org.web3j.crypto.Keys;
 import org.web3j.crypto.Sign;
 import org.web3j.crypto.Sign.SignatureData;
@@ -118,10 +120,90 @@ public class Crypto {
     
     
     public static byte[] sign(byte[] msg, Signer signer) throws SignException {
-        byte[] hsh = Hash.sha3(msg);
+        byte[] hsh = Keccak256.hash(msg);
         return signer.sign(hsh);
     }
     
+    // ----- verification -----
+    
+    /**
+     * Recovers the address of the signer of the given message.
+     * 
+     * @param msg the signed message
+     * @param signature the signature with R,S,V components
+     * @return the address of the signer
+     * @throws SignException if no address can be recovered
+     */
+    public static byte[] recoverAddress(byte[] msg, byte[] signature) throws SignException {
+        return recoverAddressFromDigest(Keccak256.hash(msg), signature);
+    }
+    
+    /**
+     * Recovers the address of the signer of the given digest.
+     * <p>
+     * Uses the native secp256k1 implementation unless disabled via 
+     * {@link KeyFactory#NATIVE_SECP256K1_DISABLED_PROP} or not loaded.
+     * 
+     * @param digestHash the signed digest
+     * @param signature the signature with R,S,V components
+     * @return the address of the signer
+     * @throws SignException if no address can be recovered
+     */
+    public static byte[] recoverAddressFromDigest(byte[] digestHash, byte[] signature) throws SignException {
+        return recoverAddressFromDigest(
+            digestHash, 
+            signature, 
+            !KeyFactory.NATIVE_SECP256K1_DISABLED && Secp256k1Context.isEnabled());
+    }
+    
+    static byte[] recoverAddressFromDigest(
+        byte[] digestHash, 
+        byte[] signature, 
+        boolean nativeImpl) throws SignException {
+        
+        if (signature == null || signature.length != SIGNATURE_LENGTH) {
+            throw new SignException("invalid signature length");
+        }
+        int recId = signature[64] & 0xFF;
+        if (recId >= 27) {
+            recId -= 27;
+        }
+        if (recId > 3) {
+            throw new SignException("invalid signature: recovery id " + recId);
+        }
+        
+        if (nativeImpl) {
+            byte[] pubKey;
+            try {
+                pubKey = NativeSecp256k1.ecdsaRecover(
+                    Arrays.copyOfRange(signature, 0, SIGNATURE_LENGTH-1), 
+                    digestHash, 
+                    recId);
+            } catch (Exception e) {
+                throw new SignException("invalid signature", e);
+            }
+            if (pubKey == null || pubKey.length != PUBLIC_KEY_SIZE+1) {
+                throw new SignException("invalid signature: no public key recovered");
+            }
+            // remove prefix
+            return Keys.getAddress(Arrays.copyOfRange(pubKey, 1, pubKey.length));
+        }
+        
+        ECDSASignature sig = new ECDSASignature(
+            new BigInteger(1, Arrays.copyOfRange(signature, 0, 32)), 
+            new BigInteger(1, Arrays.copyOfRange(signature, 32, 64)));
+        BigInteger pubKey;
+        try {
+            pubKey = Sign.recoverFromSignature(recId, sig, digestHash);
+        } catch (Exception e) {
+            throw new SignException("invalid signature", e);
+        }
+        if (pubKey == null) {
+            throw new SignException("invalid signature: no public key recovered");
+        }
+        return pubkeyToAddress(pubKey);
+    }
+    
     public static byte[] adjustSignedBytes(byte[] signature) throws SignException {
         if (signature == null) {
             throw new SignException("Null signature");
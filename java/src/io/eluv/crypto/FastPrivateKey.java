@@ -0,0 +1,107 @@
+package io.eluv.crypto;
+
+import java.math.BigInteger;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.bouncycastle.math.ec.ECMultiplier;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.math.ec.FixedPointCombMultiplier;
+import org.bouncycastle.math.ec.FixedPointUtil;
+import org.web3j.crypto.ECKeyPair;
+import org.web3j.utils.Numeric;
+
+/**
+ * FastPrivateKey is a pure java signer - for use when the native secp256k1
+ * library is not available.
+ * <p>
+ * Signatures are the same as those of {@link PrivateKey}: deterministic
+ * (RFC 6979) and canonical (low S). Instead of recovering the public key for
+ * each candidate recovery id afterwards, the recovery id is derived from the
+ * nonce point R while signing: the parity of R.y, whether R.x overflowed the
+ * curve order, and whether S was negated.
+ * <p>
+ * The nonce point is computed with precomputed comb tables of the generator.
+ * Instances hold no mutable state and can be shared by many threads.
+ */
+public class FastPrivateKey implements Signer {
+
+    private static final BigInteger   N      = PrivateKey.CURVE.getN();
+    private static final BigInteger   HALF_N = N.shiftRight(1);
+    private static final ECPoint      G      = PrivateKey.CURVE.getG();
+    private static final ECMultiplier BASE_MULTIPLIER = new FixedPointCombMultiplier();
+
+    static {
+        // build the tables once instead of on the first signature
+        FixedPointUtil.precompute(G);
+    }
+
+    private final BigInteger mPrivKey;
+    private final byte[]     mAddress;
+
+    public FastPrivateKey(ECKeyPair k) {
+        mPrivKey = k.getPrivateKey();
+        mAddress = Crypto.pubkeyToAddress(k);
+    }
+
+    public FastPrivateKey(String hexEncodedPk) throws KeysException {
+        this(Crypto.KeyPairFrom(hexEncodedPk));
+    }
+
+    @Override
+    public byte[] getAddress() {
+        return mAddress;
+    }
+
+    @Override
+    public byte[] sign(byte[] digestHash) throws SignException {
+        if (digestHash == null || digestHash.length == 0) {
+            throw new SignException("signing failed: no digest");
+        }
+        BigInteger e = messageToInt(digestHash);
+        HMacDSAKCalculator kCalc = new HMacDSAKCalculator(new SHA256Digest());
+        kCalc.init(N, mPrivKey, digestHash);
+
+        BigInteger r;
+        BigInteger s;
+        int recId;
+        while (true) {
+            BigInteger k = kCalc.nextK();
+            ECPoint p = BASE_MULTIPLIER.multiply(G, k).normalize();
+            BigInteger x = p.getAffineXCoord().toBigInteger();
+            r = x.mod(N);
+            if (r.signum() == 0) {
+                continue;
+            }
+            s = k.modInverse(N).multiply(e.add(mPrivKey.multiply(r))).mod(N);
+            if (s.signum() == 0) {
+                continue;
+            }
+            recId = p.getAffineYCoord().testBitZero() ? 1 : 0;
+            if (x.compareTo(N) >= 0) {
+                recId |= 2;
+            }
+            break;
+        }
+        // canonical signature: negating S amounts to negating R
+        if (s.compareTo(HALF_N) > 0) {
+            s = N.subtract(s);
+            recId ^= 1;
+        }
+
+        // R: 32 bytes | S: 32 bytes | V: 1 byte
+        byte[] sig = new byte[Crypto.SIGNATURE_LENGTH];
+        System.arraycopy(Numeric.toBytesPadded(r, 32), 0, sig, 0, 32);
+        System.arraycopy(Numeric.toBytesPadded(s, 32), 0, sig, 32, 32);
+        sig[64] = (byte) (recId + 27);
+        return sig;
+    }
+
+    // as ECDSASigner: the leftmost bits of the digest, up to the order length
+    private static BigInteger messageToInt(byte[] digestHash) {
+        BigInteger e = new BigInteger(1, digestHash);
+        int excess = digestHash.length * 8 - N.bitLength();
+        return excess > 0 ? e.shiftRight(excess) : e;
+    }
+
+}
@@ -0,0 +1,269 @@
+package io.eluv.crypto;
+
+/**
+ * Keccak256 computes Keccak-256 digests - the original Keccak padding used by
+ * Ethereum, not SHA3-256 - as web3j Hash.sha3 does, without allocating.
+ * <p>
+ * Data is absorbed directly into the state as it is passed to
+ * {@link #update(byte[], int, int)}, and the digest is written into a caller
+ * provided buffer. An instance can be reused after {@link #digest(byte[], int)}
+ * or {@link #reset()}, but is not thread-safe: the static {@code hash} methods
+ * use one instance per thread.
+ */
+public final class Keccak256 {
+
+    public static final int DIGEST_LENGTH = 32;
+    // 1600 - 2 * 256 bits
+    static final int RATE = 136;
+
+    static final long[] RC = new long[] {
+        0x0000000000000001L, 0x0000000000008082L, 0x800000000000808AL, 0x8000000080008000L,
+        0x000000000000808BL, 0x0000000080000001L, 0x8000000080008081L, 0x8000000000008009L,
+        0x000000000000008AL, 0x0000000000000088L, 0x0000000080008009L, 0x000000008000000AL,
+        0x000000008000808BL, 0x800000000000008BL, 0x8000000000008089L, 0x8000000000008003L,
+        0x8000000000008002L, 0x8000000000000080L, 0x000000000000800AL, 0x800000008000000AL,
+        0x8000000080008081L, 0x8000000000008080L, 0x0000000080000001L, 0x8000000080008008L,
+    };
+
+    private static final ThreadLocal<Keccak256> local = ThreadLocal.withInitial(Keccak256::new);
+
+    private final long[] mState = new long[25];
+    // number of bytes absorbed in the current block
+    private int          mPos;
+
+    /**
+     * Hashes the given bytes.
+     *
+     * @param input the bytes to hash
+     * @return the 32 bytes digest
+     */
+    public static byte[] hash(byte[] input) {
+        byte[] out = new byte[DIGEST_LENGTH];
+        hash(input, 0, input.length, out, 0);
+        return out;
+    }
+
+    /**
+     * Hashes the given range of bytes into the given buffer, with the state of
+     * the calling thread.
+     *
+     * @param input     the bytes to hash
+     * @param offset    offset of the bytes
+     * @param length    number of bytes
+     * @param out       the output buffer
+     * @param outOffset offset of the 32 bytes digest in the output buffer
+     */
+    public static void hash(byte[] input, int offset, int length, byte[] out, int outOffset) {
+        Keccak256 k = local.get();
+        k.reset();
+        k.update(input, offset, length);
+        k.digest(out, outOffset);
+    }
+
+    public void reset() {
+        for (int i = 0; i < 25; i++) {
+            mState[i] = 0;
+        }
+        mPos = 0;
+    }
+
+    public Keccak256 update(byte b) {
+        mState[mPos >>> 3] ^= (b & 0xFFL) << ((mPos & 7) << 3);
+        if (++mPos == RATE) {
+            permute(mState);
+            mPos = 0;
+        }
+        return this;
+    }
+
+    public Keccak256 update(byte[] input) {
+        return update(input, 0, input.length);
+    }
+
+    public Keccak256 update(byte[] input, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > input.length - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", size " + input.length);
+        }
+        long[] state = mState;
+        int pos = mPos;
+        int end = offset + length;
+        // complete the current block
+        while (pos != 0 && offset < end) {
+            state[pos >>> 3] ^= (input[offset++] & 0xFFL) << ((pos & 7) << 3);
+            if (++pos == RATE) {
+                permute(state);
+                pos = 0;
+            }
+        }
+        // whole blocks
+        while (end - offset >= RATE) {
+            for (int i = 0; i < RATE / 8; i++) {
+                state[i] ^= readLong(input, offset);
+                offset += 8;
+            }
+            permute(state);
+        }
+        // remainder
+        while (offset < end) {
+            state[pos >>> 3] ^= (input[offset++] & 0xFFL) << ((pos & 7) << 3);
+            pos++;
+        }
+        mPos = pos;
+        return this;
+    }
+
+    /**
+     * Writes the digest of all bytes absorbed since the last reset and resets
+     * this instance.
+     *
+     * @param out       the output buffer
+     * @param outOffset offset of the 32 bytes digest in the output buffer
+     */
+    public void digest(byte[] out, int outOffset) {
+        if (outOffset < 0 || outOffset > out.length - DIGEST_LENGTH) {
+            throw new IndexOutOfBoundsException("offset " + outOffset + ", size " + out.length);
+        }
+        long[] state = mState;
+        // keccak padding: 0x01 ... 0x80
+        state[mPos >>> 3] ^= 0x01L << ((mPos & 7) << 3);
+        state[(RATE - 1) >>> 3] ^= 0x80L << (((RATE - 1) & 7) << 3);
+        permute(state);
+        for (int i = 0; i < DIGEST_LENGTH / 8; i++) {
+            long v = state[i];
+            for (int b = 0; b < 8; b++) {
+                out[outOffset++] = (byte) (v >>> (b << 3));
+            }
+        }
+        reset();
+    }
+
+    /**
+     * @return the digest of all bytes absorbed since the last reset
+     */
+    public byte[] digest() {
+        byte[] out = new byte[DIGEST_LENGTH];
+        digest(out, 0);
+        return out;
+    }
+
+    static long readLong(byte[] b, int off) {
+        return (b[off] & 0xFFL)
+            | (b[off + 1] & 0xFFL) << 8
+            | (b[off + 2] & 0xFFL) << 16
+            | (b[off + 3] & 0xFFL) << 24
+            | (b[off + 4] & 0xFFL) << 32
+            | (b[off + 5] & 0xFFL) << 40
+            | (b[off + 6] & 0xFFL) << 48
+            | (b[off + 7] & 0xFFL) << 56;
+    }
+
+    /**
+     * The Keccak-f[1600] permutation, with lanes held in local variables.
+     */
+    static void permute(long[] a) {
+        long a00 = a[0],  a01 = a[1],  a02 = a[2],  a03 = a[3],  a04 = a[4];
+        long a05 = a[5],  a06 = a[6],  a07 = a[7],  a08 = a[8],  a09 = a[9];
+        long a10 = a[10], a11 = a[11], a12 = a[12], a13 = a[13], a14 = a[14];
+        long a15 = a[15], a16 = a[16], a17 = a[17], a18 = a[18], a19 = a[19];
+        long a20 = a[20], a21 = a[21], a22 = a[22], a23 = a[23], a24 = a[24];
+
+        for (int i = 0; i < 24; i++) {
+            // theta
+            long c0 = a00 ^ a05 ^ a10 ^ a15 ^ a20;
+            long c1 = a01 ^ a06 ^ a11 ^ a16 ^ a21;
+            long c2 = a02 ^ a07 ^ a12 ^ a17 ^ a22;
+            long c3 = a03 ^ a08 ^ a13 ^ a18 ^ a23;
+            long c4 = a04 ^ a09 ^ a14 ^ a19 ^ a24;
+
+            long d1 = (c1 << 1 | c1 >>> 63) ^ c4;
+            long d2 = (c2 << 1 | c2 >>> 63) ^ c0;
+            long d3 = (c3 << 1 | c3 >>> 63) ^ c1;
+            long d4 = (c4 << 1 | c4 >>> 63) ^ c2;
+            long d0 = (c0 << 1 | c0 >>> 63) ^ c3;
+
+            a00 ^= d1; a05 ^= d1; a10 ^= d1; a15 ^= d1; a20 ^= d1;
+            a01 ^= d2; a06 ^= d2; a11 ^= d2; a16 ^= d2; a21 ^= d2;
+            a02 ^= d3; a07 ^= d3; a12 ^= d3; a17 ^= d3; a22 ^= d3;
+            a03 ^= d4; a08 ^= d4; a13 ^= d4; a18 ^= d4; a23 ^= d4;
+            a04 ^= d0; a09 ^= d0; a14 ^= d0; a19 ^= d0; a24 ^= d0;
+
+            // rho and pi
+            c1  = a01 <<  1 | a01 >>> 63;
+            a01 = a06 << 44 | a06 >>> 20;
+            a06 = a09 << 20 | a09 >>> 44;
+            a09 = a22 << 61 | a22 >>>  3;
+            a22 = a14 << 39 | a14 >>> 25;
+            a14 = a20 << 18 | a20 >>> 46;
+            a20 = a02 << 62 | a02 >>>  2;
+            a02 = a12 << 43 | a12 >>> 21;
+            a12 = a13 << 25 | a13 >>> 39;
+            a13 = a19 <<  8 | a19 >>> 56;
+            a19 = a23 << 56 | a23 >>>  8;
+            a23 = a15 << 41 | a15 >>> 23;
+            a15 = a04 << 27 | a04 >>> 37;
+            a04 = a24 << 14 | a24 >>> 50;
+            a24 = a21 <<  2 | a21 >>> 62;
+            a21 = a08 << 55 | a08 >>>  9;
+            a08 = a16 << 45 | a16 >>> 19;
+            a16 = a05 << 36 | a05 >>> 28;
+            a05 = a03 << 28 | a03 >>> 36;
+            a03 = a18 << 21 | a18 >>> 43;
+            a18 = a17 << 15 | a17 >>> 49;
+            a17 = a11 << 10 | a11 >>> 54;
+            a11 = a07 <<  6 | a07 >>> 58;
+            a07 = a10 <<  3 | a10 >>> 61;
+            a10 = c1;
+
+            // chi
+            c0 = a00 ^ (~a01 & a02);
+            c1 = a01 ^ (~a02 & a03);
+            a02 ^= ~a03 & a04;
+            a03 ^= ~a04 & a00;
+            a04 ^= ~a00 & a01;
+            a00 = c0;
+            a01 = c1;
+
+            c0 = a05 ^ (~a06 & a07);
+            c1 = a06 ^ (~a07 & a08);
+            a07 ^= ~a08 & a09;
+            a08 ^= ~a09 & a05;
+            a09 ^= ~a05 & a06;
+            a05 = c0;
+            a06 = c1;
+
+            c0 = a10 ^ (~a11 & a12);
+            c1 = a11 ^ (~a12 & a13);
+            a12 ^= ~a13 & a14;
+            a13 ^= ~a14 & a10;
+            a14 ^= ~a10 & a11;
+            a10 = c0;
+            a11 = c1;
+
+            c0 = a15 ^ (~a16 & a17);
+            c1 = a16 ^ (~a17 & a18);
+            a17 ^= ~a18 & a19;
+            a18 ^= ~a19 & a15;
+            a19 ^= ~a15 & a16;
+            a15 = c0;
+            a16 = c1;
+
+            c0 = a20 ^ (~a21 & a22);
+            c1 = a21 ^ (~a22 & a23);
+            a22 ^= ~a23 & a24;
+            a23 ^= ~a24 & a20;
+            a24 ^= ~a20 & a21;
+            a20 = c0;
+            a21 = c1;
+
+            // iota
+            a00 ^= RC[i];
+        }
+
+        a[0]  = a00; a[1]  = a01; a[2]  = a02; a[3]  = a03; a[4]  = a04;
+        a[5]  = a05; a[6]  = a06; a[7]  = a07; a[8]  = a08; a[9]  = a09;
+        a[10] = a10; a[11] = a11; a[12] = a12; a[13] = a13; a[14] = a14;
+        a[15] = a15; a[16] = a16; a[17] = a17; a[18] = a18; a[19] = a19;
+        a[20] = a20; a[21] = a21; a[22] = a22; a[23] = a23; a[24] = a24;
+    }
+
+}
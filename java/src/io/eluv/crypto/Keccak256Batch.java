@@ -0,0 +1,186 @@
+package io.eluv.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Keccak256Batch computes the Keccak-256 digests of several independent
+ * messages together - as {@link Keccak256} does for a single message.
+ * <p>
+ * Messages are assigned to the lanes of an interleaved Keccak state: each
+ * permutation advances one block of every message in flight, and a lane takes
+ * the next message as soon as its current one is complete. With the scalar
+ * implementation - Java 8 or no vector support - there is a single lane and
+ * messages are hashed one after the other; see {@link KeccakLanes} for
+ * enabling the Vector API implementation on JDK 17+.
+ * <p>
+ * The static {@code hash} methods use one instance per thread.
+ */
+public final class Keccak256Batch {
+
+    private static final int BLOCK_WORDS = Keccak256.RATE / 8;
+
+    private static final ThreadLocal<Keccak256Batch> local =
+        ThreadLocal.withInitial(() -> new Keccak256Batch(KeccakLanes.get()));
+
+    private final KeccakLanes mLanes;
+    private final int         mCount;
+    private final long[]      mState;
+    // per lane: index of the message in flight or -1, position in the message
+    // and whether the last block was absorbed
+    private final int[]       mMsg;
+    private final int[]       mPos;
+    private final boolean[]   mLast;
+
+    Keccak256Batch(KeccakLanes lanes) {
+        mLanes = lanes;
+        mCount = lanes.lanes();
+        mState = new long[25 * mCount];
+        mMsg = new int[mCount];
+        mPos = new int[mCount];
+        mLast = new boolean[mCount];
+    }
+
+    /**
+     * @return the number of messages hashed together by the calling thread
+     */
+    public static int lanes() {
+        return local.get().mCount;
+    }
+
+    /**
+     * Hashes each of the given messages.
+     *
+     * @param inputs the messages
+     * @return the 32 bytes digests, in the same order
+     */
+    public static byte[][] hash(byte[][] inputs) {
+        int n = inputs.length;
+        int[] offsets = new int[n];
+        int[] lengths = new int[n];
+        for (int i = 0; i < n; i++) {
+            lengths[i] = inputs[i].length;
+        }
+        byte[] out = new byte[n * Keccak256.DIGEST_LENGTH];
+        hash(inputs, offsets, lengths, out, 0);
+
+        byte[][] res = new byte[n][Keccak256.DIGEST_LENGTH];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(out, i * Keccak256.DIGEST_LENGTH, res[i], 0, Keccak256.DIGEST_LENGTH);
+        }
+        return res;
+    }
+
+    /**
+     * Hashes the given ranges of bytes into the given buffer.
+     *
+     * @param inputs    the messages
+     * @param offsets   offset of each message
+     * @param lengths   number of bytes of each message
+     * @param out       the output buffer
+     * @param outOffset offset of the digests in the output buffer: the digest
+     *                  of message i is at {@code outOffset + 32 * i}
+     */
+    public static void hash(byte[][] inputs, int[] offsets, int[] lengths, byte[] out, int outOffset) {
+        local.get().run(inputs, offsets, lengths, out, outOffset);
+    }
+
+    void run(byte[][] inputs, int[] offsets, int[] lengths, byte[] out, int outOffset) {
+        int n = inputs.length;
+        if (offsets.length != n || lengths.length != n) {
+            throw new IllegalArgumentException("inputs " + n + ", offsets " + offsets.length + ", lengths " + lengths.length);
+        }
+        for (int i = 0; i < n; i++) {
+            if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] > inputs[i].length - lengths[i]) {
+                throw new IndexOutOfBoundsException(
+                    "input " + i + ": offset " + offsets[i] + ", length " + lengths[i] + ", size " + inputs[i].length);
+            }
+        }
+        if (outOffset < 0 || outOffset > out.length - n * Keccak256.DIGEST_LENGTH) {
+            throw new IndexOutOfBoundsException("offset " + outOffset + ", size " + out.length);
+        }
+        if (n * 4 <= mCount) {
+            // mostly idle lanes are slower than hashing one by one
+            for (int i = 0; i < n; i++) {
+                Keccak256.hash(inputs[i], offsets[i], lengths[i], out, outOffset + i * Keccak256.DIGEST_LENGTH);
+            }
+            return;
+        }
+
+        int[] msg = mMsg;
+        Arrays.fill(msg, -1);
+        int next = 0;
+        while (true) {
+            int active = 0;
+            for (int l = 0; l < mCount; l++) {
+                if (msg[l] < 0) {
+                    if (next == n) {
+                        continue;
+                    }
+                    msg[l] = next++;
+                    mPos[l] = 0;
+                    clear(l);
+                }
+                absorb(l, inputs[msg[l]], offsets[msg[l]], lengths[msg[l]]);
+                active++;
+            }
+            if (active == 0) {
+                return;
+            }
+            mLanes.permute(mState);
+            for (int l = 0; l < mCount; l++) {
+                if (mLast[l]) {
+                    squeeze(l, out, outOffset + msg[l] * Keccak256.DIGEST_LENGTH);
+                    mLast[l] = false;
+                    msg[l] = -1;
+                }
+            }
+        }
+    }
+
+    private void clear(int l) {
+        for (int i = 0; i < 25; i++) {
+            mState[i * mCount + l] = 0;
+        }
+    }
+
+    // absorbs the next block of the message of lane l - padded if last
+    private void absorb(int l, byte[] input, int offset, int length) {
+        long[] state = mState;
+        int lanes = mCount;
+        int pos = mPos[l];
+        int off = offset + pos;
+        int remaining = length - pos;
+        if (remaining >= Keccak256.RATE) {
+            for (int i = 0; i < BLOCK_WORDS; i++) {
+                state[i * lanes + l] ^= Keccak256.readLong(input, off);
+                off += 8;
+            }
+            mPos[l] = pos + Keccak256.RATE;
+            return;
+        }
+        int i = 0;
+        for (; remaining >= 8; remaining -= 8) {
+            state[i++ * lanes + l] ^= Keccak256.readLong(input, off);
+            off += 8;
+        }
+        long v = 0;
+        for (int b = 0; b < remaining; b++) {
+            v |= (input[off + b] & 0xFFL) << (b << 3);
+        }
+        // keccak padding: 0x01 ... 0x80
+        v |= 0x01L << (remaining << 3);
+        state[i * lanes + l] ^= v;
+        state[(BLOCK_WORDS - 1) * lanes + l] ^= 0x80L << 56;
+        mLast[l] = true;
+    }
+
+    private void squeeze(int l, byte[] out, int outOffset) {
+        for (int i = 0; i < Keccak256.DIGEST_LENGTH / 8; i++) {
+            long v = mState[i * mCount + l];
+            for (int b = 0; b < 8; b++) {
+                out[outOffset++] = (byte) (v >>> (b << 3));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package io.eluv.crypto;
+
+/**
+ * KeccakLanes applies the Keccak-f[1600] permutation to several independent
+ * states at once.
+ * <p>
+ * States are interleaved: word {@code i} of lane {@code l} is at index
+ * {@code i * lanes() + l}. The scalar implementation has a single lane; on
+ * JDK 17+ a Vector API implementation - from the multi-release part of the
+ * jar - is used when the {@code jdk.incubator.vector} module is added with
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+abstract class KeccakLanes {
+
+    /**
+     * Pass true to always use the scalar permutation.
+     */
+    static final String VECTOR_DISABLED_PROP = "keccak.vector.disabled";
+    static final boolean VECTOR_DISABLED =
+        Boolean.valueOf(System.getProperty(VECTOR_DISABLED_PROP, "false"));
+
+    // only present in META-INF/versions/17 of the jar
+    private static final String VECTOR_CLASS = "io.eluv.crypto.VectorKeccakLanes";
+
+    static final KeccakLanes SCALAR = new KeccakLanes() {
+        @Override
+        int lanes() {
+            return 1;
+        }
+
+        @Override
+        void permute(long[] state) {
+            Keccak256.permute(state);
+        }
+
+        @Override
+        public String toString() {
+            return "scalar";
+        }
+    };
+
+    private static final KeccakLanes VECTOR = loadVector();
+    private static final KeccakLanes DEFAULT = VECTOR_DISABLED || VECTOR == null ? SCALAR : VECTOR;
+
+    /**
+     * @return the number of states permuted together
+     */
+    abstract int lanes();
+
+    /**
+     * Permutes all lanes of the given interleaved states.
+     *
+     * @param state {@code 25 * lanes()} words
+     */
+    abstract void permute(long[] state);
+
+    /**
+     * @return the implementation to use
+     */
+    static KeccakLanes get() {
+        return DEFAULT;
+    }
+
+    /**
+     * @return the Vector API implementation or null if not available
+     */
+    static KeccakLanes vector() {
+        return VECTOR;
+    }
+
+    private static KeccakLanes loadVector() {
+        try {
+            return (KeccakLanes) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+        } catch (Throwable t) {
+            // java 8, jar without the java 17 classes, module not added or
+            // vectors too narrow to be worth it
+            return null;
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package io.eluv.crypto;
 
+import org.bitcoin.Secp256k1Context;
+
 public class KeyFactory {
     
     public static final String NATIVE_SECP256K1_DISABLED_PROP = "native.secp256k1.disabled";
@@ -11,9 +13,18 @@ public class KeyFactory {
     }
     
     
+    /**
+     * Creates a signer for the given private key: a native {@link Secp256k1}
+     * signer, or a pure java {@link FastPrivateKey} if the native library is
+     * disabled or not available.
+     * 
+     * @param hexEncodedPk the hex encoded private key
+     * @return the signer
+     * @throws KeysException if the key is invalid
+     */
     public static Signer createSigner(String hexEncodedPk) throws KeysException {
-        if (NATIVE_SECP256K1_DISABLED) {
-            return new PrivateKey(Crypto.KeyPairFrom(hexEncodedPk));
+        if (NATIVE_SECP256K1_DISABLED || !Secp256k1Context.isEnabled()) {
+            return new FastPrivateKey(hexEncodedPk);
         }
         return new Secp256k1(hexEncodedPk);
     }
@@ -0,0 +1,33 @@
+package io.eluv.crypto;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Kms is the client of a key management service holding private keys and
+ * signing digests on behalf of its callers - typically remotely.
+ * <p>
+ * Digests are sent in batches: one request signs many digests.
+ *
+ * @see BatchingSigner
+ * @see LocalKms
+ */
+public interface Kms {
+
+    /**
+     * @param keyId the ID of the key in the KMS
+     * @return the address of the key
+     * @throws SignException if the key is unknown or the KMS not reachable
+     */
+    byte[] getAddress(String keyId) throws SignException;
+
+    /**
+     * Signs the given digests with the given key in a single request.
+     *
+     * @param keyId   the ID of the key in the KMS
+     * @param digests the 32 bytes digests to sign
+     * @return a future of the signatures - with R,S,V components - in the
+     *         order of the digests
+     */
+    CompletableFuture<byte[][]> signBatch(String keyId, byte[][] digests);
+
+}
@@ -0,0 +1,129 @@
+package io.eluv.crypto;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LocalKms is an in-process stand-in for a remote {@link Kms}: keys are held
+ * in memory and each request is answered after a simulated round-trip
+ * latency.
+ * <p>
+ * It counts requests, signatures and concurrent requests so that batching can
+ * be tested and benchmarked offline - see {@link BatchingSigner}.
+ */
+public class LocalKms implements Kms, AutoCloseable {
+
+    private final long                                      mLatencyNanos;
+    private final ConcurrentHashMap<String, FastPrivateKey> mKeys      = new ConcurrentHashMap<String, FastPrivateKey>();
+    private final ScheduledExecutorService                  mExecutor;
+    private final LongAdder                                 mRequests  = new LongAdder();
+    private final LongAdder                                 mSigned    = new LongAdder();
+    private final AtomicInteger                             mActive    = new AtomicInteger();
+    private final AtomicInteger                             mMaxActive = new AtomicInteger();
+
+    /**
+     * Construct a new LocalKms.
+     *
+     * @param latency the round-trip latency of a request
+     * @param unit    the unit of the latency
+     */
+    public LocalKms(long latency, TimeUnit unit) {
+        if (latency < 0) {
+            throw new IllegalArgumentException("negative latency: " + latency);
+        }
+        mLatencyNanos = unit.toNanos(latency);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+            Math.max(2, Runtime.getRuntime().availableProcessors()),
+            r -> {
+                Thread t = new Thread(r, "elv-local-kms");
+                t.setDaemon(true);
+                return t;
+            });
+        executor.setRemoveOnCancelPolicy(true);
+        mExecutor = executor;
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param keyId        the ID of the key
+     * @param hexEncodedPk the hex encoded private key
+     * @return this LocalKms
+     * @throws KeysException if the key is invalid
+     */
+    public LocalKms withKey(String keyId, String hexEncodedPk) throws KeysException {
+        mKeys.put(keyId, new FastPrivateKey(hexEncodedPk));
+        return this;
+    }
+
+    @Override
+    public byte[] getAddress(String keyId) throws SignException {
+        return key(keyId).getAddress();
+    }
+
+    private FastPrivateKey key(String keyId) throws SignException {
+        FastPrivateKey k = mKeys.get(keyId);
+        if (k == null) {
+            throw new SignException("unknown key: " + keyId);
+        }
+        return k;
+    }
+
+    @Override
+    public CompletableFuture<byte[][]> signBatch(String keyId, byte[][] digests) {
+        CompletableFuture<byte[][]> res = new CompletableFuture<byte[][]>();
+        mRequests.increment();
+        int active = mActive.incrementAndGet();
+        mMaxActive.accumulateAndGet(active, Math::max);
+        byte[][] copy = digests.clone();
+        mExecutor.schedule(() -> {
+            try {
+                FastPrivateKey k = key(keyId);
+                byte[][] sigs = new byte[copy.length][];
+                for (int i = 0; i < copy.length; i++) {
+                    sigs[i] = k.sign(copy[i]);
+                }
+                mSigned.add(sigs.length);
+                mActive.decrementAndGet();
+                res.complete(sigs);
+            } catch (Throwable t) {
+                mActive.decrementAndGet();
+                res.completeExceptionally(t);
+            }
+        }, mLatencyNanos, TimeUnit.NANOSECONDS);
+        return res;
+    }
+
+    /**
+     * @return the number of requests received
+     */
+    public long getRequestCount() {
+        return mRequests.sum();
+    }
+
+    /**
+     * @return the number of digests signed
+     */
+    public long getSignatureCount() {
+        return mSigned.sum();
+    }
+
+    /**
+     * @return the maximum number of requests that were in progress at the
+     *         same time
+     */
+    public int getMaxConcurrentRequests() {
+        return mMaxActive.get();
+    }
+
+    @Override
+    public void close() {
+        mExecutor.shutdown();
+    }
+
+}
@@ -1,33 +1,48 @@
 package io.eluv.crypto;
 
+import java.math.BigInteger;
 import java.util.Arrays;
 
 import org.bitcoin.NativeSecp256k1;
 import org.bitcoin.NativeSecp256k1Util;
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
 import org.bouncycastle.util.encoders.Hex;
 import org.web3j.crypto.Keys;
+import org.web3j.utils.Numeric;
 
 
 /**
  * Secp256k1 is a private key that uses the native implementation from:
  * <p>
  * https://github.com/ACINQ/secp256k1/tree/jni-embed/src/java
- *
+ * <p>
+ * The bindings don't expose the recoverable signature API of libsecp256k1.
+ * The recovery id (V) is instead derived from the nonce point R = k*G: the
+ * library signs with the deterministic RFC 6979 nonce k, which is recomputed
+ * here and multiplied natively - about half the cost of a public key recovery.
+ * Recovering the public key is only attempted when R doesn't match the
+ * signature.
  */
 public class Secp256k1 implements Signer {
     
+    private static final BigInteger N = PrivateKey.CURVE.getN();
+    
     private final byte[] mPrivKey;
+    private final BigInteger mPrivKeyInt;
     private final byte[] mPubKey;
     private final byte[] mAddress;
 
     public Secp256k1(String pk) throws KeysException {
         mPrivKey = secp256k1(pk);
+        mPrivKeyInt = new BigInteger(1, mPrivKey);
         mPubKey = initPubKey();
         mAddress = Keys.getAddress(addressBytes());
     }
     
     public Secp256k1(byte[] pk) throws KeysException {
         mPrivKey = secp256k1(pk);
+        mPrivKeyInt = new BigInteger(1, mPrivKey);
         mPubKey = initPubKey();
         mAddress = Keys.getAddress(addressBytes());
     }
@@ -51,6 +66,11 @@ public class Secp256k1 implements Signer {
         return mAddress;
     }
     
+    @Override
+    public boolean isNative() {
+        return true;
+    }
+    
     @Override
     public byte[] sign(byte[] digestHash) throws SignException {
         byte[] sig;
@@ -68,6 +88,69 @@ public class Secp256k1 implements Signer {
         }
         
         // compute V
+        int recId = nonceRecId(digestHash, sig);
+        if (recId == -1) {
+            recId = recoverRecId(digestHash, sig);
+        }
+        if (recId == -1) {
+            throw new SignException("invalid signature: invalid private key ?");
+        }
+        int headerByte = recId + 27;
+        byte[] bsig = Arrays.copyOf(sig, sig.length+1);
+        bsig[sig.length] = (byte) headerByte;
+        return bsig;
+    }
+    
+    /**
+     * Computes the recovery id of the given signature from its nonce point.
+     * 
+     * @return the recovery id or -1 if the nonce point doesn't match the 
+     *         signature - when the library used another nonce or R.x 
+     *         overflowed the curve order.
+     */
+    int nonceRecId(byte[] digestHash, byte[] sig) throws SignException {
+        BigInteger z = new BigInteger(1, digestHash);
+        HMacDSAKCalculator kCalc = new HMacDSAKCalculator(new SHA256Digest());
+        kCalc.init(N, mPrivKeyInt, digestHash);
+        BigInteger k = kCalc.nextK();
+        
+        byte[] point;
+        try {
+            // uncompressed R = k*G: 0x04 | x | y
+            point = NativeSecp256k1.computePubkey(Numeric.toBytesPadded(k, Crypto.PRIVATE_KEY_SIZE));
+        } catch (NativeSecp256k1Util.AssertFailException t) {
+            throw new SignException("", t);
+        }
+        if (point == null || point.length != Crypto.PUBLIC_KEY_SIZE + 1) {
+            return -1;
+        }
+        for (int i = 0; i < 32; i++) {
+            if (point[1 + i] != sig[i]) {
+                return -1;
+            }
+        }
+        int recId = point[point.length - 1] & 1;
+        
+        // the library normalizes S to the lower half of the curve order, which
+        // amounts to negating R and flips the parity of its y coordinate: S was
+        // negated unless s*k = z + r*d - checked without any modular inverse
+        BigInteger r = new BigInteger(1, Arrays.copyOfRange(sig, 0, 32));
+        BigInteger s = new BigInteger(1, Arrays.copyOfRange(sig, 32, 64));
+        BigInteger lhs = s.multiply(k).mod(N);
+        BigInteger rhs = z.add(r.multiply(mPrivKeyInt)).mod(N);
+        if (!lhs.equals(rhs)) {
+            recId ^= 1;
+        }
+        return recId;
+    }
+    
+    /**
+     * Computes the recovery id of the given signature by recovering the public
+     * key for each possible id.
+     * 
+     * @return the recovery id or -1 if no public key matches
+     */
+    int recoverRecId(byte[] digestHash, byte[] sig) throws SignException {
         int recId = -1;
         byte[] k;
         for (int i = 0; i < 4; i++) {
@@ -81,13 +164,7 @@ public class Secp256k1 implements Signer {
                 break;
             }
         }
-        if (recId == -1) {
-            throw new SignException("invalid signature: invalid private key ?");
-        }
-        int headerByte = recId + 27;
-        byte[] bsig = Arrays.copyOf(sig, sig.length+1);
-        bsig[sig.length] = (byte) headerByte;
-        return bsig;
+        return recId;
     }
 
     
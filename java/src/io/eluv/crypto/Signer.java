@@ -1,8 +1,6 @@
 package io.eluv.crypto;
 
 import org.web3j.crypto.ECKeyPair;
-import org.web3j.crypto.Sign;
-import org.web3j.crypto.Sign.SignatureData;
 
 /**
  * Signer is the interface of objects providing a signature for a given digest.
@@ -23,22 +21,32 @@ public interface Signer  {
      */
     public byte[] getAddress();
     
+    /**
+     * @return true if signatures are computed by a native library - as 
+     *         reported to issuance metrics
+     */
+    default boolean isNative() {
+        return false;
+    }
     
-    /** A signer that uses an ECKeyPair */
+    
+    /** 
+     * A signer that uses an ECKeyPair.
+     * <p>
+     * Signatures are the same as those of web3j Sign.signMessage, computed
+     * with a {@link FastPrivateKey}: instances can be shared by many threads.
+     */
     public static class KeyPairSigner implements Signer {
-        private final ECKeyPair mKeyPair;
-        private byte[] mAddress;
+        private final FastPrivateKey mKey;
         
         public KeyPairSigner(ECKeyPair ecKeyPair) {
-            mKeyPair = ecKeyPair;
-            mAddress = Crypto.pubkeyToAddress(mKeyPair);
+            mKey = new FastPrivateKey(ecKeyPair);
         }
         
         @Override
         public byte[] sign(byte[] digestHash) throws SignException {
             try {
-                SignatureData sd = Sign.signMessage(digestHash, mKeyPair, false);
-                return Crypto.signatureBytes(sd);
+                return mKey.sign(digestHash);
             } catch (SignException e) {
                 throw e;
             } catch (Throwable t) {
@@ -48,7 +56,7 @@ public interface Signer  {
         
         @Override
         public byte[] getAddress() {
-            return mAddress;
+            return mKey.getAddress();
         }
         
     }
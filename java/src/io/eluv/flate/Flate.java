@@ -1,68 +1,210 @@
 package io.eluv.flate;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 /**
  * Flate is a utility to compress / decompress data in a way compatible with the
- * golang flate package. 
- * 
+ * golang flate package.
+ *
  * The both use 'nowrap' as true to not use the ZLIB header and checksum fields
- * in order to support the compression format used in both GZIP and PKZIP - 
+ * in order to support the compression format used in both GZIP and PKZIP -
  * as in the 'flate' Golang package.
+ * <p>
+ * Deflaters and inflaters are pooled and reused: at most {@link #POOL_SIZE} of
+ * each are kept, others are ended right after use in order to release their
+ * native memory.
  */
 public class Flate {
 
+    static final int POOL_SIZE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    // the largest array the VM allocates
+    private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private static final ArrayBlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+    private static final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+
+    /**
+     * Returns an upper bound of the compressed length of data of the given
+     * length.
+     */
+    public static int maxCompressedLength(int len) {
+        // conservative bound of zlib deflateBound - without header
+        return len + ((len + 7) >> 3) + ((len + 63) >> 6) + 11;
+    }
+
     /**
      * Compresses data with zlib compression.
      */
     public static byte[] compressData(byte[] raw) throws IOException {
-        InputStream in = new ByteArrayInputStream(raw);
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        Deflater def = new Deflater(Deflater.BEST_COMPRESSION, true);
-        def.setStrategy(Deflater.HUFFMAN_ONLY);
-        OutputStream out = new DeflaterOutputStream(baos, def);
-        copyAll(in, out);
-        in.close();
-        out.close();
-        return baos.toByteArray();
+        return compressData(raw, 0, raw.length);
+    }
+
+    /**
+     * Compresses data from the given range of bytes with zlib compression.
+     */
+    public static byte[] compressData(byte[] raw, int offset, int length) throws IOException {
+        byte[] out = new byte[maxCompressedLength(length)];
+        int n = compress(raw, offset, length, out, 0);
+        return Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Compresses data from the given range of bytes into the given buffer.
+     *
+     * @param raw       the data to compress
+     * @param offset    offset of the data
+     * @param length    length of the data
+     * @param out       the output buffer
+     * @param outOffset offset in the output buffer
+     * @return the length of the compressed data
+     * @throws IOException if the output buffer is too small - see
+     *                     {@link #maxCompressedLength(int)}
+     */
+    public static int compress(byte[] raw, int offset, int length, byte[] out, int outOffset) throws IOException {
+        Deflater def = deflaters.poll();
+        if (def == null) {
+            def = new Deflater(Deflater.BEST_COMPRESSION, true);
+            def.setStrategy(Deflater.HUFFMAN_ONLY);
+        }
+        try {
+            def.setInput(raw, offset, length);
+            def.finish();
+            int pos = outOffset;
+            while (!def.finished()) {
+                if (pos == out.length) {
+                    throw new IOException("output buffer too small");
+                }
+                pos += def.deflate(out, pos, out.length - pos);
+            }
+            return pos - outOffset;
+        } finally {
+            def.reset();
+            if (!deflaters.offer(def)) {
+                def.end();
+            }
+        }
     }
 
     /**
      * Decompresses zlib compressed data.
      */
     public static byte[] decompressData(byte[] compressed) throws IOException {
-        InputStream in = new InflaterInputStream(
-                new ByteArrayInputStream(compressed),
-                new Inflater(true));
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        copyAll(in, out);
-        in.close();
-        out.close();
-        return out.toByteArray();
+        return decompressData(compressed, 0, compressed.length);
+    }
+
+    /**
+     * Decompresses zlib compressed data from the given range of bytes.
+     *
+     * @throws IOException if the data is invalid
+     * @see #decompressData(byte[], int, int, int)
+     */
+    public static byte[] decompressData(byte[] compressed, int offset, int length) throws IOException {
+        return decompressData(compressed, offset, length, MAX_ARRAY_LENGTH);
+    }
+
+    /**
+     * Decompresses zlib compressed data from the given range of bytes, up to
+     * the given length - protects against small inputs inflating to huge
+     * outputs.
+     *
+     * @param compressed the compressed data
+     * @param offset     offset of the compressed data
+     * @param length     length of the compressed data
+     * @param maxLength  the maximum length of the decompressed data
+     * @return the decompressed data
+     * @throws IOException if the data is invalid or inflates to more than
+     *                     maxLength bytes
+     */
+    public static byte[] decompressData(byte[] compressed, int offset, int length, int maxLength) throws IOException {
+        byte[] out = new byte[(int) Math.min(maxLength, Math.max(64, length * 4L))];
+        int pos = 0;
+        Inflater inf = takeInflater();
+        try {
+            inf.setInput(compressed, offset, length);
+            while (true) {
+                pos += inflate(inf, out, pos, out.length - pos);
+                if (inf.finished()) {
+                    break;
+                }
+                if (pos == out.length) {
+                    if (out.length >= maxLength) {
+                        throw new IOException("decompressed data exceeds " + maxLength + " bytes");
+                    }
+                    out = Arrays.copyOf(out, (int) Math.min(maxLength, out.length * 2L));
+                } else if (inf.needsInput()) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+            }
+        } finally {
+            release(inf);
+        }
+        return Arrays.copyOf(out, pos);
+    }
+
+    /**
+     * Decompresses zlib compressed data from the given range of bytes into the
+     * given buffer.
+     *
+     * @param compressed the compressed data
+     * @param offset     offset of the compressed data
+     * @param length     length of the compressed data
+     * @param out        the output buffer
+     * @param outOffset  offset in the output buffer
+     * @return the length of the decompressed data
+     * @throws IOException if the data is invalid or the output buffer too small
+     */
+    public static int decompress(byte[] compressed, int offset, int length, byte[] out, int outOffset) throws IOException {
+        int pos = outOffset;
+        Inflater inf = takeInflater();
+        try {
+            inf.setInput(compressed, offset, length);
+            while (true) {
+                pos += inflate(inf, out, pos, out.length - pos);
+                if (inf.finished()) {
+                    return pos - outOffset;
+                }
+                if (pos == out.length) {
+                    throw new IOException("output buffer too small");
+                }
+                if (inf.needsInput()) {
+                    throw new EOFException("Unexpected end of ZLIB input stream");
+                }
+            }
+        } finally {
+            release(inf);
+        }
+    }
+
+    private static Inflater takeInflater() {
+        Inflater inf = inflaters.poll();
+        return inf != null ? inf : new Inflater(true);
+    }
+
+    private static void release(Inflater inf) {
+        inf.reset();
+        if (!inflaters.offer(inf)) {
+            inf.end();
+        }
     }
 
-    static final int BUFFER_SIZE = 4096;
-    static long copyAll(InputStream from, OutputStream to) throws IOException {
-        byte[] buf = new byte[BUFFER_SIZE];
-        long total = 0;
-        while (true) {
-            int r = from.read(buf);
-            if (r == -1) {
-                break;
+    private static int inflate(Inflater inf, byte[] out, int off, int len) throws IOException {
+        try {
+            int n = inf.inflate(out, off, len);
+            if (n == 0 && inf.needsDictionary()) {
+                throw new ZipException("preset dictionary not supported");
             }
-            to.write(buf, 0, r);
-            total += r;
+            return n;
+        } catch (DataFormatException e) {
+            String s = e.getMessage();
+            throw new ZipException(s != null ? s : "Invalid ZLIB data format");
         }
-        return total;
     }
-    
 
 }
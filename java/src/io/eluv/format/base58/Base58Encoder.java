@@ -1,12 +1,67 @@
 package io.eluv.format.base58;
 
+import java.util.Arrays;
+
+import io.eluv.metrics.IssuanceMetrics.Stage;
+import io.eluv.metrics.Metrics;
+
 public class Base58Encoder {
-    
+
+    /**
+     * Pass true to use the native library - when available - instead of the
+     * pure java encoder.
+     * <p>
+     * The pure java {@link FastBase58} encoder is faster than the native
+     * library: the library is therefore not loaded unless this property is set.
+     */
+    public static final String NATIVE_B58_PREFERRED_PROP = "native.b58.preferred";
+    public static final boolean NATIVE_B58_PREFERRED =
+        Boolean.valueOf(System.getProperty(NATIVE_B58_PREFERRED_PROP, "false"));
+
     public static String encode(byte[] input) {
-        if (NativeB58Encoder.hasLib()) {
+        boolean nativePath = NATIVE_B58_PREFERRED && NativeB58Encoder.hasLib();
+        Metrics.get().recordPath(Stage.ENCODE, nativePath);
+        if (nativePath) {
             return NativeB58Encoder.encode(input);
         }
-        return Base58.encode(input);
+        return FastBase58.encode(input);
+    }
+
+    /**
+     * Encodes the given bytes after the given prefix.
+     * <p>
+     * With the pure java encoder, the prefix and the Base58 digits are written
+     * into a single buffer.
+     *
+     * @param prefix the prefix
+     * @param input  the bytes to encode
+     * @return the prefix followed by the Base58 encoding of input
+     */
+    public static String encode(String prefix, byte[] input) {
+        return encode(prefix, input, 0, input.length);
+    }
+
+    /**
+     * Encodes the given range of bytes after the given prefix.
+     *
+     * @param prefix the prefix
+     * @param input  the bytes to encode
+     * @param off    offset of the bytes to encode
+     * @param len    number of bytes to encode
+     * @return the prefix followed by the Base58 encoding of the range
+     */
+    public static String encode(String prefix, byte[] input, int off, int len) {
+        boolean nativePath = NATIVE_B58_PREFERRED && NativeB58Encoder.hasLib();
+        Metrics.get().recordPath(Stage.ENCODE, nativePath);
+        if (nativePath) {
+            byte[] range = off == 0 && len == input.length ? input : Arrays.copyOfRange(input, off, off + len);
+            return prefix + NativeB58Encoder.encode(range);
+        }
+        int plen = prefix.length();
+        char[] buf = new char[plen + FastBase58.maxEncodedLength(len)];
+        prefix.getChars(0, plen, buf, 0);
+        int n = FastBase58.encode(input, off, len, buf, plen);
+        return new String(buf, 0, plen + n);
     }
 
 }
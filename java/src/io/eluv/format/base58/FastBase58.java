@@ -0,0 +1,469 @@
+package io.eluv.format.base58;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * FastBase58 is a pure java Base58 encoder and decoder producing the same
+ * output as {@link Base58} and the Go 'mr-tron/base58' library (bitcoin
+ * alphabet).
+ * <p>
+ * Instead of dividing the whole number by 58 for each output digit, the input
+ * is converted 32 bits at a time into limbs of base 58^5, each of which then
+ * yields 5 digits. The output is written directly into a char array of the
+ * exact size - or into a caller provided char array, byte array, ByteBuffer or
+ * Appendable so that prefixes and Base58 payloads can share a single buffer.
+ * <p>
+ * Decoding works the other way around: 5 digits at a time are accumulated into
+ * limbs of 32 bits.
+ */
+public final class FastBase58 {
+
+    static final char[] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+    static final byte[] ASCII    = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+
+    // 58^5: the largest power of 58 that fits in 31 bits
+    static final long LIMB        = 58L * 58 * 58 * 58 * 58;
+    static final int  LIMB_DIGITS = 5;
+
+    // powers of 58 up to 58^4
+    private static final int[]  POWERS  = { 1, 58, 58 * 58, 58 * 58 * 58, 58 * 58 * 58 * 58 };
+    private static final long   MASK    = 0xFFFFFFFFL;
+    // digit of ASCII characters or -1
+    private static final byte[] INDEXES = new byte[128];
+
+    static {
+        Arrays.fill(INDEXES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEXES[ALPHABET[i]] = (byte) i;
+        }
+    }
+
+    private FastBase58() {
+    }
+
+    /**
+     * Encodes the given bytes.
+     *
+     * @param input the bytes to encode
+     * @return the Base58 string
+     */
+    public static String encode(byte[] input) {
+        return encode(input, 0, input.length);
+    }
+
+    /**
+     * Encodes the given range of bytes.
+     *
+     * @param input  the bytes to encode
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @return the Base58 string
+     */
+    public static String encode(byte[] input, int offset, int length) {
+        checkRange(input.length, offset, length);
+        int zeros = leadingZeros(input, offset, length);
+        int[] limbs = new int[maxLimbs(length - zeros)];
+        int used = toLimbs(input, offset + zeros, length - zeros, limbs);
+        char[] out = new char[zeros + digitCount(limbs, used)];
+        writeDigits(limbs, used, out, 0, out.length);
+        return new String(out);
+    }
+
+    /**
+     * Returns an upper bound of the length of the Base58 encoding of the given
+     * number of bytes.
+     */
+    public static int maxEncodedLength(int length) {
+        return (int) (length * 1366L / 1000 + 1);
+    }
+
+    /**
+     * Returns the exact length of the Base58 encoding of the given range of
+     * bytes.
+     * <p>
+     * This is about as costly as encoding: use
+     * {@link #maxEncodedLength(int)} to size buffers when possible.
+     */
+    public static int encodedLength(byte[] input, int offset, int length) {
+        checkRange(input.length, offset, length);
+        int zeros = leadingZeros(input, offset, length);
+        int[] limbs = new int[maxLimbs(length - zeros)];
+        int used = toLimbs(input, offset + zeros, length - zeros, limbs);
+        return zeros + digitCount(limbs, used);
+    }
+
+    /**
+     * Encodes the given range of bytes into the given char array.
+     *
+     * @param input     the bytes to encode
+     * @param offset    offset of the first byte
+     * @param length    number of bytes
+     * @param out       the output buffer - see {@link #maxEncodedLength(int)}
+     * @param outOffset offset in the output buffer
+     * @return the number of chars written
+     * @throws IndexOutOfBoundsException if the output buffer is too small
+     */
+    public static int encode(byte[] input, int offset, int length, char[] out, int outOffset) {
+        checkRange(input.length, offset, length);
+        int zeros = leadingZeros(input, offset, length);
+        int[] limbs = new int[maxLimbs(length - zeros)];
+        int used = toLimbs(input, offset + zeros, length - zeros, limbs);
+        int n = zeros + digitCount(limbs, used);
+        checkOutput(out.length, outOffset, n);
+        writeDigits(limbs, used, out, outOffset, outOffset + n);
+        return n;
+    }
+
+    /**
+     * Encodes the given range of bytes as ASCII into the given byte array.
+     *
+     * @param input     the bytes to encode
+     * @param offset    offset of the first byte
+     * @param length    number of bytes
+     * @param out       the output buffer - see {@link #maxEncodedLength(int)}
+     * @param outOffset offset in the output buffer
+     * @return the number of bytes written
+     * @throws IndexOutOfBoundsException if the output buffer is too small
+     */
+    public static int encode(byte[] input, int offset, int length, byte[] out, int outOffset) {
+        checkRange(input.length, offset, length);
+        int zeros = leadingZeros(input, offset, length);
+        int[] limbs = new int[maxLimbs(length - zeros)];
+        int used = toLimbs(input, offset + zeros, length - zeros, limbs);
+        int n = zeros + digitCount(limbs, used);
+        checkOutput(out.length, outOffset, n);
+        writeDigits(limbs, used, out, outOffset, outOffset + n);
+        return n;
+    }
+
+    /**
+     * Encodes the given range of bytes as ASCII into the given buffer, at its
+     * current position.
+     * <p>
+     * The position of the buffer is advanced by the number of bytes written.
+     * Nothing is written if the remaining space is too small.
+     *
+     * @param input  the bytes to encode
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @param out    the output buffer - heap or direct
+     * @return the number of bytes written
+     * @throws BufferOverflowException if the remaining space of the buffer is
+     *                                 too small
+     */
+    public static int encode(byte[] input, int offset, int length, ByteBuffer out) {
+        checkRange(input.length, offset, length);
+        int zeros = leadingZeros(input, offset, length);
+        int[] limbs = new int[maxLimbs(length - zeros)];
+        int used = toLimbs(input, offset + zeros, length - zeros, limbs);
+        int n = zeros + digitCount(limbs, used);
+        if (out.remaining() < n) {
+            throw new BufferOverflowException();
+        }
+        int start = out.position();
+        if (out.hasArray()) {
+            int off = out.arrayOffset() + start;
+            writeDigits(limbs, used, out.array(), off, off + n);
+        } else {
+            writeDigits(limbs, used, out, start, start + n);
+        }
+        out.position(start + n);
+        return n;
+    }
+
+    /**
+     * Encodes the given range of bytes into the given Appendable.
+     * <p>
+     * Digits are appended one by one, in order, without intermediate buffer.
+     *
+     * @param input  the bytes to encode
+     * @param offset offset of the first byte
+     * @param length number of bytes
+     * @param out    the output
+     * @return the number of chars appended
+     * @throws IOException if appending fails
+     */
+    public static int encode(byte[] input, int offset, int length, Appendable out) throws IOException {
+        checkRange(input.length, offset, length);
+        int zeros = leadingZeros(input, offset, length);
+        int[] limbs = new int[maxLimbs(length - zeros)];
+        int used = toLimbs(input, offset + zeros, length - zeros, limbs);
+        int n = zeros + digitCount(limbs, used);
+        if (out instanceof StringBuilder) {
+            StringBuilder sb = (StringBuilder) out;
+            sb.ensureCapacity(sb.length() + n);
+        }
+        for (int k = 0; k < zeros; k++) {
+            out.append(ALPHABET[0]);
+        }
+        if (used == 0) {
+            return n;
+        }
+        // most significant limb without leading zeros, then 5 digits per limb
+        int top = limbs[used - 1];
+        int p = POWERS.length - 1;
+        while (POWERS[p] > top) {
+            p--;
+        }
+        appendDigits(top, p, out);
+        for (int j = used - 2; j >= 0; j--) {
+            appendDigits(limbs[j], LIMB_DIGITS - 1, out);
+        }
+        return n;
+    }
+
+    private static void appendDigits(int v, int fromPower, Appendable out) throws IOException {
+        for (int p = fromPower; p >= 0; p--) {
+            int d = v / POWERS[p];
+            out.append(ALPHABET[d]);
+            v -= d * POWERS[p];
+        }
+    }
+
+    private static void checkOutput(int size, int offset, int n) {
+        if (offset < 0 || offset + n > size) {
+            throw new IndexOutOfBoundsException("output buffer too small: " + n + " chars needed");
+        }
+    }
+
+    static void checkRange(int size, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > size || offset + length < 0) {
+            throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + size);
+        }
+    }
+
+    static int leadingZeros(byte[] input, int offset, int length) {
+        int zeros = 0;
+        while (zeros < length && input[offset + zeros] == 0) {
+            zeros++;
+        }
+        return zeros;
+    }
+
+    // upper bound of the number of limbs for the given number of bytes:
+    // log(256) / log(58) = 1.3657...
+    static int maxLimbs(int length) {
+        return (int) ((length * 1366L / 1000 + 1) / LIMB_DIGITS + 1);
+    }
+
+    /**
+     * Converts the big endian number in the given range into limbs of base
+     * 58^5, least significant first.
+     *
+     * @return the number of limbs used - the last one is never zero
+     */
+    static int toLimbs(byte[] input, int offset, int length, int[] limbs) {
+        int used = 0;
+        int end = offset + length;
+        // the first chunk takes the bytes in excess of a multiple of 4
+        int chunk = (length & 3) == 0 ? 4 : length & 3;
+        for (int i = offset; i < end; i += chunk, chunk = 4) {
+            long carry = 0;
+            for (int k = 0; k < chunk; k++) {
+                carry = (carry << 8) | (input[i + k] & 0xFF);
+            }
+            int shift = chunk << 3;
+            for (int j = 0; j < used; j++) {
+                long t = ((long) limbs[j] << shift) + carry;
+                carry = t / LIMB;
+                limbs[j] = (int) (t - carry * LIMB);
+            }
+            while (carry != 0) {
+                long q = carry / LIMB;
+                limbs[used++] = (int) (carry - q * LIMB);
+                carry = q;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return the number of digits of the number held by the given limbs
+     */
+    static int digitCount(int[] limbs, int used) {
+        if (used == 0) {
+            return 0;
+        }
+        int n = (used - 1) * LIMB_DIGITS;
+        for (int top = limbs[used - 1]; top != 0; top /= 58) {
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Writes the digits of the given limbs, ending at the given position, and
+     * fills the remaining positions from the given start with leading '1's.
+     */
+    static void writeDigits(int[] limbs, int used, char[] out, int start, int end) {
+        int pos = end;
+        for (int j = 0; j < used - 1; j++) {
+            int v = limbs[j];
+            for (int k = 0; k < LIMB_DIGITS; k++) {
+                int q = v / 58;
+                out[--pos] = ALPHABET[v - q * 58];
+                v = q;
+            }
+        }
+        if (used > 0) {
+            for (int v = limbs[used - 1]; v != 0; v /= 58) {
+                out[--pos] = ALPHABET[v % 58];
+            }
+        }
+        while (pos > start) {
+            out[--pos] = ALPHABET[0];
+        }
+    }
+
+    /**
+     * Same as {@link #writeDigits(int[], int, char[], int, int)} with
+     * ASCII bytes.
+     */
+    static void writeDigits(int[] limbs, int used, byte[] out, int start, int end) {
+        int pos = end;
+        for (int j = 0; j < used - 1; j++) {
+            int v = limbs[j];
+            for (int k = 0; k < LIMB_DIGITS; k++) {
+                int q = v / 58;
+                out[--pos] = ASCII[v - q * 58];
+                v = q;
+            }
+        }
+        if (used > 0) {
+            for (int v = limbs[used - 1]; v != 0; v /= 58) {
+                out[--pos] = ASCII[v % 58];
+            }
+        }
+        while (pos > start) {
+            out[--pos] = ASCII[0];
+        }
+    }
+
+    /**
+     * Same as {@link #writeDigits(int[], int, char[], int, int)} with ASCII
+     * bytes and absolute puts.
+     */
+    static void writeDigits(int[] limbs, int used, ByteBuffer out, int start, int end) {
+        int pos = end;
+        for (int j = 0; j < used - 1; j++) {
+            int v = limbs[j];
+            for (int k = 0; k < LIMB_DIGITS; k++) {
+                int q = v / 58;
+                out.put(--pos, ASCII[v - q * 58]);
+                v = q;
+            }
+        }
+        if (used > 0) {
+            for (int v = limbs[used - 1]; v != 0; v /= 58) {
+                out.put(--pos, ASCII[v % 58]);
+            }
+        }
+        while (pos > start) {
+            out.put(--pos, ASCII[0]);
+        }
+    }
+
+    /**
+     * Returns an upper bound of the length of the bytes decoded from a Base58
+     * string of the given length.
+     */
+    public static int maxDecodedLength(int length) {
+        return length;
+    }
+
+    /**
+     * Decodes the given Base58 string.
+     *
+     * @param s the Base58 string
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the string is not valid Base58
+     */
+    public static byte[] decode(CharSequence s) throws IllegalArgumentException {
+        byte[] out = new byte[maxDecodedLength(s.length())];
+        int n = decode(s, 0, s.length(), out, 0);
+        if (n < 0) {
+            throw new IllegalArgumentException("invalid base58 string");
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    /**
+     * Decodes the given range of a Base58 string into the given buffer.
+     * <p>
+     * Invalid input is reported by returning -1 rather than by an exception.
+     *
+     * @param s         the Base58 string
+     * @param offset    offset of the first character
+     * @param length    number of characters
+     * @param out       the output buffer - see {@link #maxDecodedLength(int)}
+     * @param outOffset offset in the output buffer
+     * @return the number of decoded bytes or -1 if the input is not valid Base58
+     * @throws IndexOutOfBoundsException if the output buffer is too small
+     */
+    public static int decode(CharSequence s, int offset, int length, byte[] out, int outOffset) {
+        checkRange(s.length(), offset, length);
+        int zeros = 0;
+        while (zeros < length && s.charAt(offset + zeros) == ALPHABET[0]) {
+            zeros++;
+        }
+        // log(58) / log(256) = 0.7322...
+        int[] limbs = new int[(int) ((length - zeros) * 733L / 1000 / 4 + 2)];
+        int used = 0;
+        int end = offset + length;
+        for (int i = offset + zeros; i < end; i += LIMB_DIGITS) {
+            int chunk = Math.min(LIMB_DIGITS, end - i);
+            long carry = 0;
+            long mul = 1;
+            for (int k = 0; k < chunk; k++) {
+                char c = s.charAt(i + k);
+                int d = c < 128 ? INDEXES[c] : -1;
+                if (d < 0) {
+                    return -1;
+                }
+                carry = carry * 58 + d;
+                mul *= 58;
+            }
+            for (int j = 0; j < used; j++) {
+                long t = (limbs[j] & MASK) * mul + carry;
+                limbs[j] = (int) t;
+                carry = t >>> 32;
+            }
+            if (carry != 0) {
+                limbs[used++] = (int) carry;
+            }
+        }
+
+        int topBytes = 0;
+        if (used > 0) {
+            for (int top = limbs[used - 1]; top != 0; top >>>= 8) {
+                topBytes++;
+            }
+        }
+        int total = zeros + (used > 0 ? (used - 1) * 4 + topBytes : 0);
+        if (outOffset < 0 || outOffset + total > out.length) {
+            throw new IndexOutOfBoundsException("output buffer too small: " + total + " bytes needed");
+        }
+        int pos = outOffset;
+        for (int k = 0; k < zeros; k++) {
+            out[pos++] = 0;
+        }
+        if (used > 0) {
+            int top = limbs[used - 1];
+            for (int shift = (topBytes - 1) << 3; shift >= 0; shift -= 8) {
+                out[pos++] = (byte) (top >>> shift);
+            }
+            for (int j = used - 2; j >= 0; j--) {
+                int v = limbs[j];
+                out[pos++] = (byte) (v >>> 24);
+                out[pos++] = (byte) (v >>> 16);
+                out[pos++] = (byte) (v >>> 8);
+                out[pos++] = (byte) v;
+            }
+        }
+        return total;
+    }
+}
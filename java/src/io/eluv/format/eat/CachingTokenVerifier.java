@@ -0,0 +1,257 @@
+package io.eluv.format.eat;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * CachingTokenVerifier fronts a {@link TokenVerifier} with a bounded cache of
+ * successfully verified tokens, keyed by the 'bearer' string.
+ * <p>
+ * A cached token is never returned once expired: its entry is removed on the
+ * next lookup of the token or by the next purge of expired entries, which
+ * runs at most every {@link #PURGE_INTERVAL} millis when new tokens are
+ * cached, or on demand with {@link #cleanUp()}.
+ * <p>
+ * The cache is bounded both in number of entries and in weight - the total
+ * length of the cached 'bearer' strings. When a bound is exceeded, expired
+ * entries are removed first, then arbitrary entries until the cache is back
+ * under {@link #LOW_WATERMARK} of its bounds.
+ * <p>
+ * Each verification returns its own copy of the cached token: callers may
+ * modify it without affecting the cache.
+ */
+public class CachingTokenVerifier {
+
+    public static final long   PURGE_INTERVAL = 1000;
+    public static final double LOW_WATERMARK  = 0.9;
+
+    private final TokenVerifier                    mVerifier;
+    private final int                              mMaximumSize;
+    private final long                             mMaximumWeight;
+    private final long                             mMaxTtl;
+    private final ConcurrentHashMap<String, Entry> mCache;
+
+    private final AtomicLong    mWeight      = new AtomicLong();
+    private final AtomicLong    mLastPurge   = new AtomicLong();
+    private final ReentrantLock mEvictLock   = new ReentrantLock();
+    private final LongAdder     mHits        = new LongAdder();
+    private final LongAdder     mMisses      = new LongAdder();
+    private final LongAdder     mEvictions   = new LongAdder();
+    private final LongAdder     mExpirations = new LongAdder();
+
+    /**
+     * Construct a new CachingTokenVerifier keeping tokens at most 24 hours.
+     *
+     * @param verifier      the verifier of tokens that are not cached
+     * @param maximumSize   the maximum number of cached tokens
+     * @param maximumWeight the maximum total length of cached tokens
+     */
+    public CachingTokenVerifier(TokenVerifier verifier, int maximumSize, long maximumWeight) {
+        this(verifier, maximumSize, maximumWeight, TokenFactory.HOUR * 24);
+    }
+
+    /**
+     * Construct a new CachingTokenVerifier.
+     *
+     * @param verifier      the verifier of tokens that are not cached
+     * @param maximumSize   the maximum number of cached tokens
+     * @param maximumWeight the maximum total length of cached tokens
+     * @param maxTtl        the maximum time in millis a token is cached,
+     *                      whatever its expiration
+     */
+    public CachingTokenVerifier(TokenVerifier verifier, int maximumSize, long maximumWeight, long maxTtl) {
+        if (maximumSize <= 0 || maximumWeight <= 0 || maxTtl <= 0) {
+            throw new IllegalArgumentException("cache bounds must be positive");
+        }
+        mVerifier = verifier;
+        mMaximumSize = maximumSize;
+        mMaximumWeight = maximumWeight;
+        mMaxTtl = maxTtl;
+        mCache = new ConcurrentHashMap<String, Entry>(Math.min(maximumSize, 1 << 16));
+    }
+
+    /**
+     * Verifies the given token at the current time.
+     *
+     * @param s the 'bearer' string
+     * @return the verified token
+     * @throws TokenException if the token is invalid or expired
+     * @see TokenVerifier#verify(String)
+     */
+    public Token verify(String s) throws TokenException {
+        return verify(s, System.currentTimeMillis());
+    }
+
+    /**
+     * Verifies the given token.
+     *
+     * @param s   the 'bearer' string
+     * @param now the current time (millis - UTC)
+     * @return the verified token
+     * @throws TokenException if the token is invalid or expired
+     * @see TokenVerifier#verify(String, long)
+     */
+    public Token verify(String s, long now) throws TokenException {
+        if (s == null) {
+            throw new TokenException("invalid token: missing prefix");
+        }
+        Entry e = mCache.get(s);
+        if (e != null) {
+            if (now < e.mDeadline) {
+                mHits.increment();
+                return e.mToken.copy();
+            }
+            if (remove(s, e)) {
+                mExpirations.increment();
+            }
+        }
+        mMisses.increment();
+
+        Token token = mVerifier.verify(s, now);
+        put(s, token, now);
+        return token.copy();
+    }
+
+    private void put(String s, Token token, long now) {
+        long deadline = now + mMaxTtl;
+        long expires = token.mTokenData.Expires;
+        // verified tokens expire: only guard against overflow
+        if (expires < Long.MAX_VALUE - mVerifier.getClockSkew()) {
+            deadline = Math.min(deadline, expires + mVerifier.getClockSkew());
+        }
+        Entry e = new Entry(token, deadline, s.length());
+        if (mCache.putIfAbsent(s, e) == null) {
+            mWeight.addAndGet(e.mWeight);
+        }
+
+        long lastPurge = mLastPurge.get();
+        if (now - lastPurge >= PURGE_INTERVAL && mLastPurge.compareAndSet(lastPurge, now)) {
+            purgeExpired(now);
+        }
+        if (mCache.size() > mMaximumSize || mWeight.get() > mMaximumWeight) {
+            evict(now);
+        }
+    }
+
+    private boolean remove(String s, Entry e) {
+        if (mCache.remove(s, e)) {
+            mWeight.addAndGet(-e.mWeight);
+            return true;
+        }
+        return false;
+    }
+
+    private void purgeExpired(long now) {
+        for (Iterator<Map.Entry<String, Entry>> it = mCache.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Entry> me = it.next();
+            Entry e = me.getValue();
+            if (now >= e.mDeadline && remove(me.getKey(), e)) {
+                mExpirations.increment();
+            }
+        }
+    }
+
+    private void evict(long now) {
+        // a single thread evicts at a time - others simply go on
+        if (!mEvictLock.tryLock()) {
+            return;
+        }
+        try {
+            purgeExpired(now);
+
+            long maxSize = (long) (mMaximumSize * LOW_WATERMARK);
+            long maxWeight = (long) (mMaximumWeight * LOW_WATERMARK);
+            if (mCache.size() <= mMaximumSize && mWeight.get() <= mMaximumWeight) {
+                return;
+            }
+            for (Iterator<Map.Entry<String, Entry>> it = mCache.entrySet().iterator(); it.hasNext();) {
+                if (mCache.size() <= maxSize && mWeight.get() <= maxWeight) {
+                    break;
+                }
+                Map.Entry<String, Entry> me = it.next();
+                if (remove(me.getKey(), me.getValue())) {
+                    mEvictions.increment();
+                }
+            }
+        } finally {
+            mEvictLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all expired tokens from the cache.
+     */
+    public void cleanUp() {
+        long now = System.currentTimeMillis();
+        mLastPurge.set(now);
+        purgeExpired(now);
+    }
+
+    /**
+     * Removes all tokens from the cache.
+     */
+    public void invalidateAll() {
+        for (Iterator<Map.Entry<String, Entry>> it = mCache.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, Entry> me = it.next();
+            remove(me.getKey(), me.getValue());
+        }
+    }
+
+    /**
+     * @return the number of cached tokens
+     */
+    public int size() {
+        return mCache.size();
+    }
+
+    /**
+     * @return the total length of cached tokens
+     */
+    public long weight() {
+        return mWeight.get();
+    }
+
+    /**
+     * @return the number of verifications served from the cache
+     */
+    public long hitCount() {
+        return mHits.sum();
+    }
+
+    /**
+     * @return the number of verifications not served from the cache
+     */
+    public long missCount() {
+        return mMisses.sum();
+    }
+
+    /**
+     * @return the number of tokens removed to keep the cache within bounds
+     */
+    public long evictionCount() {
+        return mEvictions.sum();
+    }
+
+    /**
+     * @return the number of tokens removed because they expired
+     */
+    public long expirationCount() {
+        return mExpirations.sum();
+    }
+
+    private static final class Entry {
+        final Token mToken;
+        final long  mDeadline;
+        final int   mWeight;
+
+        Entry(Token token, long deadline, int weight) {
+            mToken = token;
+            mDeadline = deadline;
+            mWeight = weight;
+        }
+    }
+}
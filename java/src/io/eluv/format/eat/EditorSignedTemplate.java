@@ -0,0 +1,304 @@
+package io.eluv.format.eat;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+
+import io.eluv.constants.Constants;
+import io.eluv.crypto.Signer;
+import io.eluv.format.id.Id;
+
+/**
+ * EditorSignedTemplate holds the static parts of editor-signed tokens - space,
+ * library and content IDs, format, AFGH public key, delegation and context.
+ * <p>
+ * IDs are validated once when the template is built, and tokens are then
+ * issued with only the per-call fields (issued at, expiration and subject)
+ * varying. For JSON formats, the static fields are also serialized once: only
+ * the signer address, subject, issued at and expiration are written per
+ * token.
+ * <p>
+ * A template is immutable and can be shared by many threads.
+ */
+public final class EditorSignedTemplate {
+
+    private final TokenFormat             mFormat;
+    private final String                  mSID;
+    private final String                  mLID;
+    private final String                  mQID;
+    private final String                  mAFGHPublicKey;
+    private final long                    mExpiresIn;
+    // never modified once the template is built: tokens only read from it
+    private final HashMap<String, Object> mCtx;
+    // the JSON of the fields above
+    private final TokenDataJson.Template  mJsonTemplate;
+
+    // the subject computed for the last signer
+    private volatile SignerSubject        mLastSubject;
+
+    private EditorSignedTemplate(Builder builder) {
+        mFormat = builder.mFormat;
+        mSID = builder.mSID;
+        mLID = builder.mLID;
+        mQID = builder.mQID;
+        mAFGHPublicKey = builder.mAFGHPublicKey;
+        mExpiresIn = builder.mExpiresIn;
+        mCtx = new HashMap<String, Object>(builder.mCtx);
+        mJsonTemplate = jsonTemplate();
+    }
+
+    private TokenDataJson.Template jsonTemplate() {
+        try {
+            return new TokenDataJson.Template(newToken(null, 0, 0).mTokenData);
+        } catch (Exception e) {
+            // context values the object mapper fails on: reported when
+            // tokens are signed
+            return null;
+        }
+    }
+
+    public TokenFormat getFormat() {
+        return mFormat;
+    }
+
+    public long getExpiresIn() {
+        return mExpiresIn;
+    }
+
+    /**
+     * Create a new EditorSigned builder initialized from this template.
+     * <p>
+     * The returned builder is independent of this template and may be further
+     * modified.
+     *
+     * @return a new EditorSigned
+     */
+    public TokenFactory.EditorSigned newEditorSigned() {
+        long now = System.currentTimeMillis();
+        Token token = newToken(null, now, now + mExpiresIn);
+        token.mTokenData.Ctx = new HashMap<String, Object>(mCtx);
+        return new TokenFactory.EditorSigned(token);
+    }
+
+    /**
+     * Signs and encodes a token issued now, with the template expiration and
+     * the address of the signer as subject.
+     *
+     * @param sk the signer
+     * @return a 'bearer' string authorization
+     * @throws TokenException
+     */
+    public String signEncode(Signer sk) throws TokenException {
+        return signEncode(sk, null);
+    }
+
+    /**
+     * Signs and encodes a token issued now, with the template expiration.
+     *
+     * @param sk      the signer
+     * @param subject the subject or null to use the address of the signer
+     * @return a 'bearer' string authorization
+     * @throws TokenException
+     */
+    public String signEncode(Signer sk, String subject) throws TokenException {
+        long now = System.currentTimeMillis();
+        return signEncode(sk, subject, now, now + mExpiresIn);
+    }
+
+    /**
+     * Signs and encodes a token.
+     *
+     * @param sk       the signer
+     * @param subject  the subject or null to use the address of the signer
+     * @param issuedAt issued at (millis - UTC)
+     * @param expires  expiration time (millis - UTC)
+     * @return a 'bearer' string authorization
+     * @throws TokenException
+     */
+    public String signEncode(Signer sk, String subject, long issuedAt, long expires) throws TokenException {
+        try {
+            if (subject == null || subject.length() == 0) {
+                subject = subjectOf(sk);
+            }
+            Token token = newToken(subject, issuedAt, expires);
+            token.mJsonTemplate = mJsonTemplate;
+            token.sign(sk);
+            return token.encode();
+        } catch (TokenException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TokenException("", e);
+        }
+    }
+
+    /**
+     * Signs and encodes a token issued now, with the template expiration and
+     * the address of the signer as subject, as ASCII bytes into the given
+     * buffer at its current position.
+     *
+     * @param sk  the signer
+     * @param buf a heap or direct buffer
+     * @return the number of bytes written
+     * @throws TokenException
+     * @throws BufferOverflowException if the remaining space of the buffer is
+     *                                 too small
+     * @see Token#encodeTo(ByteBuffer)
+     */
+    public int signEncodeTo(Signer sk, ByteBuffer buf) throws TokenException {
+        try {
+            long now = System.currentTimeMillis();
+            Token token = newToken(subjectOf(sk), now, now + mExpiresIn);
+            token.mJsonTemplate = mJsonTemplate;
+            token.sign(sk);
+            return token.encodeTo(buf);
+        } catch (TokenException | BufferOverflowException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TokenException("", e);
+        }
+    }
+
+    Token newToken(String subject, long issuedAt, long expires) {
+        Token token = new Token(TokenType.EDITOR_SIGNED, mFormat);
+        TokenData td = token.mTokenData;
+        td.Grant = "read";
+        td.SID = mSID;
+        td.LID = mLID;
+        td.QID = mQID;
+        td.AFGHPublicKey = mAFGHPublicKey;
+        td.Subject = subject;
+        td.IssuedAt = issuedAt;
+        td.Expires = expires;
+        td.Ctx = mCtx;
+        return token;
+    }
+
+    private String subjectOf(Signer sk) {
+        SignerSubject last = mLastSubject;
+        if (last != null && last.mSigner == sk) {
+            return last.mSubject;
+        }
+        String subject = new Id(Id.Code.User, sk.getAddress()).toString();
+        mLastSubject = new SignerSubject(sk, subject);
+        return subject;
+    }
+
+    private static final class SignerSubject {
+        final Signer mSigner;
+        final String mSubject;
+
+        SignerSubject(Signer signer, String subject) {
+            mSigner = signer;
+            mSubject = subject;
+        }
+    }
+
+    /**
+     * Builder of EditorSignedTemplate.
+     */
+    public static class Builder {
+        private final TokenFormat             mFormat;
+        private final String                  mSID;
+        private final String                  mLID;
+        private final String                  mQID;
+        private String                        mAFGHPublicKey;
+        private long                          mExpiresIn = TokenFactory.HOUR * 4;
+        private final HashMap<String, Object> mCtx       = new HashMap<String, Object>();
+
+        /**
+         * Construct a new Builder using uncompressed JSON format.
+         *
+         * @param sid the space ID
+         * @param lib the library ID
+         * @param qid the content ID
+         */
+        public Builder(String sid, String lid, String qid) throws TokenException {
+            this(sid, lid, qid, false);
+        }
+
+        /**
+         * Construct a new Builder using JSON format.
+         *
+         * @param sid        the space ID
+         * @param lib        the library ID
+         * @param qid        the content ID
+         * @param compressed true to use compressed format
+         */
+        public Builder(String sid, String lid, String qid, boolean compressed) throws TokenException {
+            this(sid, lid, qid, compressed
+                ? TokenFormat.JSON_COMPRESSED
+                : TokenFormat.JSON);
+        }
+
+        /**
+         * Construct a new Builder.
+         *
+         * @param sid    the space ID
+         * @param lib    the library ID
+         * @param qid    the content ID
+         * @param format the format of the tokens: JSON, compressed or not
+         */
+        public Builder(String sid, String lid, String qid, TokenFormat format) throws TokenException {
+            TokenFactory.EditorSigned.validateFormat(format);
+            TokenFactory.EditorSigned.validateIds(sid, lid, qid);
+            mFormat = format;
+            mSID = sid;
+            mLID = lid;
+            mQID = qid;
+        }
+
+        /**
+         * Adds AFGH public key to the tokens
+         *
+         * @param afghPk the AFGH public key
+         * @return this Builder
+         */
+        public Builder withAFGHPublicKey(String afghPk) {
+            mAFGHPublicKey = afghPk;
+            return this;
+        }
+
+        /**
+         * Set the expiration delay of the tokens
+         *
+         * @param expiresIn the expiration in millis
+         * @return this Builder
+         */
+        public Builder withExpiresIn(long expiresIn) {
+            mExpiresIn = expiresIn;
+            return this;
+        }
+
+        /**
+         * Set the ID of the content ID of the delegate object storing a policy
+         *
+         * @param policyId the ID of the delegate
+         * @return this Builder
+         */
+        public Builder withDelegationId(String policyId) {
+            // validate id
+            new Id(policyId).assertCode(Id.Code.Q);
+
+            mCtx.put(Constants.ElvDelegationId, policyId);
+            return this;
+        }
+
+        /**
+         * Add context information that might be used in policy evaluation
+         * <p>
+         * All values from the map are added to the existing context. Values
+         * must not be modified once the template is built.
+         *
+         * @param ctx the context
+         * @return this Builder
+         */
+        public Builder withContext(HashMap<String, Object> ctx) {
+            mCtx.putAll(ctx);
+            return this;
+        }
+
+        public EditorSignedTemplate build() {
+            return new EditorSignedTemplate(this);
+        }
+    }
+}
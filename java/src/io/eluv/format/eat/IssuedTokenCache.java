@@ -0,0 +1,443 @@
+package io.eluv.format.eat;
+
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.eluv.crypto.Signer;
+import io.eluv.format.id.Id;
+
+/**
+ * IssuedTokenCache memoizes signed tokens by their claims.
+ * <p>
+ * When a token with the same claims - type, format, IDs, subject, grant,
+ * context and signer - was already issued, it is returned instead of signing
+ * a new one as long as:
+ * <ul>
+ * <li>its remaining lifetime is at least the configured minimum</li>
+ * <li>it does not expire after the requested token</li>
+ * </ul>
+ * Values of the context are compared deeply - arrays by content, also when
+ * nested in maps and collections. The context of a cached token
+ * is copied deeply - maps, collections and arrays - so that later changes to
+ * the builder don't alter cached claims. Tokens whose context holds values
+ * other than those and immutable scalars (strings, boxed primitives, enums)
+ * are issued but not cached.
+ * <p>
+ * The cache is bounded in number of entries: when full, expired entries are
+ * removed first, then arbitrary entries until the cache is back under
+ * 90% of its size.
+ * <p>
+ * An IssuedTokenCache can be shared by many threads.
+ */
+public class IssuedTokenCache {
+
+    private static final double LOW_WATERMARK = 0.9;
+
+    private final int                                 mMaximumSize;
+    private final long                                mMinRemaining;
+    private final ConcurrentHashMap<ClaimsKey, Entry> mCache;
+    private final ReentrantLock                       mEvictLock = new ReentrantLock();
+    private final LongAdder                           mHits      = new LongAdder();
+    private final LongAdder                           mMisses    = new LongAdder();
+    private final LongAdder                           mEvictions = new LongAdder();
+
+    /**
+     * Construct a new IssuedTokenCache.
+     *
+     * @param maximumSize  the maximum number of cached tokens
+     * @param minRemaining the minimum remaining lifetime in millis of a cached
+     *                     token for it to be returned
+     */
+    public IssuedTokenCache(int maximumSize, long minRemaining) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximum size must be positive");
+        }
+        if (minRemaining < 0) {
+            throw new IllegalArgumentException("negative minimum remaining lifetime: " + minRemaining);
+        }
+        mMaximumSize = maximumSize;
+        mMinRemaining = minRemaining;
+        mCache = new ConcurrentHashMap<ClaimsKey, Entry>(Math.min(maximumSize, 1 << 16));
+    }
+
+    /**
+     * Returns a cached token with the claims of the given builder, or signs
+     * and encodes it.
+     *
+     * @param es the token to issue
+     * @param sk the signer
+     * @return a 'bearer' string authorization
+     * @throws TokenException
+     * @see TokenFactory.EditorSigned#signEncode(Signer)
+     */
+    public String signEncode(TokenFactory.EditorSigned es, Signer sk) throws TokenException {
+        TokenData td = es.mToken.mTokenData;
+        try {
+            if (td.Subject == null || td.Subject.length() == 0) {
+                td.Subject = new Id(Id.Code.User, sk.getAddress()).toString();
+            }
+        } catch (Exception e) {
+            throw new TokenException("", e);
+        }
+
+        long now = System.currentTimeMillis();
+        ClaimsKey key = new ClaimsKey(es.mToken, sk.getAddress());
+        Entry e = mCache.get(key);
+        if (e != null) {
+            if (e.mExpires - now >= mMinRemaining && e.mExpires <= td.Expires) {
+                mHits.increment();
+                return e.mToken;
+            }
+            mCache.remove(key, e);
+        }
+        mMisses.increment();
+
+        String token = es.signEncode(sk);
+        // snapshot the context since the builder may still be modified
+        Object ctx = snapshot(key.mCtx);
+        if (td.Expires - now >= mMinRemaining && ctx != NOT_COPYABLE) {
+            @SuppressWarnings("unchecked")
+            Map<String, Object> copy = (Map<String, Object>) ctx;
+            key.mCtx = copy;
+            mCache.put(key, new Entry(token, td.Expires));
+            if (mCache.size() > mMaximumSize) {
+                evict(now);
+            }
+        }
+        return token;
+    }
+
+    private static final Object NOT_COPYABLE = new Object();
+
+    /**
+     * @return a deep copy of the given context value, or NOT_COPYABLE if it
+     *         holds values that may be mutable
+     */
+    static Object snapshot(Object v) {
+        if (v == null
+            || v instanceof String
+            || v instanceof Integer
+            || v instanceof Long
+            || v instanceof Short
+            || v instanceof Byte
+            || v instanceof Double
+            || v instanceof Float
+            || v instanceof BigInteger
+            || v instanceof BigDecimal
+            || v instanceof Boolean
+            || v instanceof Character
+            || v instanceof Enum) {
+            return v;
+        }
+        if (v instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                Object k = snapshot(e.getKey());
+                Object c = snapshot(e.getValue());
+                if (k == NOT_COPYABLE || c == NOT_COPYABLE) {
+                    return NOT_COPYABLE;
+                }
+                copy.put(k, c);
+            }
+            return copy;
+        }
+        if (v instanceof List || v instanceof Set) {
+            // same equality as the original
+            Collection<Object> copy = v instanceof List
+                ? new ArrayList<Object>()
+                : new LinkedHashSet<Object>();
+            for (Object o : (Collection<?>) v) {
+                Object c = snapshot(o);
+                if (c == NOT_COPYABLE) {
+                    return NOT_COPYABLE;
+                }
+                copy.add(c);
+            }
+            return copy;
+        }
+        if (v.getClass().isArray()) {
+            int len = Array.getLength(v);
+            Object copy = Array.newInstance(v.getClass().getComponentType(), len);
+            if (v.getClass().getComponentType().isPrimitive()) {
+                System.arraycopy(v, 0, copy, 0, len);
+                return copy;
+            }
+            for (int i = 0; i < len; i++) {
+                Object c = snapshot(Array.get(v, i));
+                if (c == NOT_COPYABLE) {
+                    return NOT_COPYABLE;
+                }
+                Array.set(copy, i, c);
+            }
+            return copy;
+        }
+        return NOT_COPYABLE;
+    }
+
+    private void evict(long now) {
+        // a single thread evicts at a time - others simply go on
+        if (!mEvictLock.tryLock()) {
+            return;
+        }
+        try {
+            for (Iterator<Map.Entry<ClaimsKey, Entry>> it = mCache.entrySet().iterator(); it.hasNext();) {
+                Map.Entry<ClaimsKey, Entry> me = it.next();
+                if (me.getValue().mExpires - now < mMinRemaining) {
+                    mCache.remove(me.getKey(), me.getValue());
+                }
+            }
+            long maxSize = (long) (mMaximumSize * LOW_WATERMARK);
+            for (Iterator<Map.Entry<ClaimsKey, Entry>> it = mCache.entrySet().iterator(); it.hasNext();) {
+                if (mCache.size() <= maxSize) {
+                    break;
+                }
+                Map.Entry<ClaimsKey, Entry> me = it.next();
+                if (mCache.remove(me.getKey(), me.getValue())) {
+                    mEvictions.increment();
+                }
+            }
+        } finally {
+            mEvictLock.unlock();
+        }
+    }
+
+    /**
+     * Removes all tokens from the cache.
+     */
+    public void invalidateAll() {
+        mCache.clear();
+    }
+
+    /**
+     * @return the number of cached tokens
+     */
+    public int size() {
+        return mCache.size();
+    }
+
+    /**
+     * @return the number of tokens served from the cache
+     */
+    public long hitCount() {
+        return mHits.sum();
+    }
+
+    /**
+     * @return the number of tokens that were signed
+     */
+    public long missCount() {
+        return mMisses.sum();
+    }
+
+    /**
+     * @return the number of tokens removed to keep the cache within bounds
+     */
+    public long evictionCount() {
+        return mEvictions.sum();
+    }
+
+    private static final class Entry {
+        final String mToken;
+        final long   mExpires;
+
+        Entry(String token, long expires) {
+            mToken = token;
+            mExpires = expires;
+        }
+    }
+
+    /**
+     * The claims of a token, excluding issued at and expiration.
+     */
+    private static final class ClaimsKey {
+        final TokenType         mType;
+        final TokenFormat       mFormat;
+        final byte[]            mSigner;
+        final byte[]            mEthTxHash;
+        final String            mAFGHPublicKey;
+        final String            mQPHash;
+        final String            mSID;
+        final String            mLID;
+        final String            mQID;
+        final String            mSubject;
+        final String            mGrant;
+        Map<String, Object>     mCtx;
+        final int               mHash;
+
+        ClaimsKey(Token token, byte[] signer) {
+            TokenData td = token.mTokenData;
+            mType = token.getType();
+            mFormat = token.getFormat();
+            mSigner = signer;
+            mEthTxHash = td.EthTxHash;
+            mAFGHPublicKey = td.AFGHPublicKey;
+            mQPHash = td.QPHash;
+            mSID = td.SID;
+            mLID = td.LID;
+            mQID = td.QID;
+            mSubject = td.Subject;
+            mGrant = td.Grant;
+            mCtx = td.Ctx;
+
+            int h = Objects.hash(mType, mFormat, mAFGHPublicKey, mQPHash, mSID, mLID, mQID, mSubject, mGrant);
+            h = 31 * h + Arrays.hashCode(mSigner);
+            h = 31 * h + Arrays.hashCode(mEthTxHash);
+            h = 31 * h + contextHash(mCtx);
+            mHash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ClaimsKey)) {
+                return false;
+            }
+            ClaimsKey other = (ClaimsKey) obj;
+            return mHash == other.mHash
+                && mType == other.mType
+                && mFormat == other.mFormat
+                && Arrays.equals(mSigner, other.mSigner)
+                && Arrays.equals(mEthTxHash, other.mEthTxHash)
+                && Objects.equals(mAFGHPublicKey, other.mAFGHPublicKey)
+                && Objects.equals(mQPHash, other.mQPHash)
+                && Objects.equals(mSID, other.mSID)
+                && Objects.equals(mLID, other.mLID)
+                && Objects.equals(mQID, other.mQID)
+                && Objects.equals(mSubject, other.mSubject)
+                && Objects.equals(mGrant, other.mGrant)
+                && sameContext(mCtx, other.mCtx);
+        }
+
+        private static int contextHash(Map<String, Object> ctx) {
+            return deepHash(ctx);
+        }
+
+        private static boolean sameContext(Map<String, Object> c1, Map<String, Object> c2) {
+            return deepEquals(c1, c2);
+        }
+
+        // consistent with deepEquals
+        private static int deepHash(Object v) {
+            if (v == null) {
+                return 0;
+            }
+            int h;
+            if (v instanceof Map) {
+                h = 0;
+                for (Map.Entry<?, ?> e : ((Map<?, ?>) v).entrySet()) {
+                    h += Objects.hashCode(e.getKey()) ^ deepHash(e.getValue());
+                }
+            } else if (v instanceof Set) {
+                h = 0;
+                for (Object o : (Set<?>) v) {
+                    h += deepHash(o);
+                }
+            } else if (v instanceof List) {
+                h = 1;
+                for (Object o : (List<?>) v) {
+                    h = 31 * h + deepHash(o);
+                }
+            } else if (v.getClass().isArray()) {
+                h = 1;
+                for (int i = 0, len = Array.getLength(v); i < len; i++) {
+                    h = 31 * h + deepHash(Array.get(v, i));
+                }
+            } else {
+                h = v.hashCode();
+            }
+            return h;
+        }
+
+        // equals of maps, lists and sets - comparing arrays by content at
+        // any depth
+        private static boolean deepEquals(Object v1, Object v2) {
+            if (v1 == v2) {
+                return true;
+            }
+            if (v1 == null || v2 == null) {
+                return false;
+            }
+            if (v1 instanceof Map && v2 instanceof Map) {
+                Map<?, ?> m1 = (Map<?, ?>) v1;
+                Map<?, ?> m2 = (Map<?, ?>) v2;
+                if (m1.size() != m2.size()) {
+                    return false;
+                }
+                for (Map.Entry<?, ?> e : m1.entrySet()) {
+                    if (!m2.containsKey(e.getKey()) || !deepEquals(e.getValue(), m2.get(e.getKey()))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (v1 instanceof Set && v2 instanceof Set) {
+                Set<?> s1 = (Set<?>) v1;
+                Set<?> s2 = (Set<?>) v2;
+                if (s1.size() != s2.size()) {
+                    return false;
+                }
+                for (Object o1 : s1) {
+                    boolean found = false;
+                    for (Object o2 : s2) {
+                        if (deepEquals(o1, o2)) {
+                            found = true;
+                            break;
+                        }
+                    }
+                    if (!found) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (v1 instanceof List && v2 instanceof List) {
+                List<?> l1 = (List<?>) v1;
+                List<?> l2 = (List<?>) v2;
+                if (l1.size() != l2.size()) {
+                    return false;
+                }
+                Iterator<?> it2 = l2.iterator();
+                for (Object o1 : l1) {
+                    if (!deepEquals(o1, it2.next())) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (v1.getClass().isArray()) {
+                int len = Array.getLength(v1);
+                if (v1.getClass() != v2.getClass() || len != Array.getLength(v2)) {
+                    return false;
+                }
+                for (int i = 0; i < len; i++) {
+                    if (!deepEquals(Array.get(v1, i), Array.get(v2, i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            return v1.equals(v2);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import org.bitcoin.Secp256k1Context;
 
 import fr.acinq.OSInfo;
 import io.eluv.crypto.KeyFactory;
+import io.eluv.format.base58.Base58Encoder;
 import io.eluv.format.base58.NativeB58Encoder;
 
 public class Natives {
@@ -20,6 +21,7 @@ public class Natives {
         
         // b58 encoding
         print("== Native b58 library ==");
+        print(Base58Encoder.NATIVE_B58_PREFERRED_PROP+"="+Base58Encoder.NATIVE_B58_PREFERRED);
         print(NativeB58Encoder.NATIVE_B58_DISABLED_PROP+"="+NativeB58Encoder.NATIVE_B58_DISABLED);
         print(NativeB58Encoder.NATIVE_B58_LIBRARY_NAME_PROP+"=" + NativeB58Encoder.NATIVE_B58_LIBRARY_NAME);
         print("default library name: " + System.mapLibraryName(NativeB58Encoder.NATIVE_B58_LIBRARY_NAME));
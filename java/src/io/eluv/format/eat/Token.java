@@ -1,6 +1,9 @@
 package io.eluv.format.eat;
 
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Objects;
 
 
@@ -9,7 +12,10 @@ import io.eluv.crypto.SignException;
 import io.eluv.crypto.Signer;
 import io.eluv.flate.Flate;
 import io.eluv.format.base58.Base58Encoder;
-import io.eluv.json.Json;
+import io.eluv.format.base58.FastBase58;
+import io.eluv.metrics.IssuanceMetrics;
+import io.eluv.metrics.IssuanceMetrics.Stage;
+import io.eluv.metrics.Metrics;
 
 /**
  * Token is an auth token, defined by it's type, format, and token data.
@@ -18,12 +24,39 @@ import io.eluv.json.Json;
 public class Token {
     private static final int prefixLen = 6; // length of entire prefix including type, sig-type and format
 
+    // all prefixes indexed by [type][sig-type][format], computed once
+    private static final String[][][] prefixes;
+
+    static {
+        TokenType[]    types    = TokenType.values();
+        TokenSigType[] sigTypes = TokenSigType.values();
+        TokenFormat[]  formats  = TokenFormat.values();
+        prefixes = new String[types.length][sigTypes.length][formats.length];
+        for (TokenType t : types) {
+            for (TokenSigType s : sigTypes) {
+                for (TokenFormat f : formats) {
+                    String prefix = t.getPrefix() + s.getPrefix() + f.getPrefix();
+                    if (prefix.length() != prefixLen) {
+                        throw new IllegalStateException("expected prefix len: " + prefixLen + ", but was: " + prefix.length());
+                    }
+                    prefixes[t.ordinal()][s.ordinal()][f.ordinal()] = prefix;
+                }
+            }
+        }
+    }
+
     private final TokenType    mType;
     private final TokenFormat  mFormat;
     private       TokenSigType mSigType;
     TokenData                  mTokenData;
-    byte[]                     mTokenBytes;
-    byte[]                     mSignature;
+    // once signed or decoded: the signature followed by the token bytes, up
+    // to mSignedLen - as base58 encoded
+    byte[]                     mSigned;
+    int                        mSignedLen;
+    // signed, but not yet encoded
+    private boolean            mIssuePending;
+    // the pre-encoded static fields of JSON tokens issued from a template
+    TokenDataJson.Template     mJsonTemplate;
 
     public Token(TokenType type, TokenFormat format) {
         mType = type;
@@ -32,12 +65,54 @@ public class Token {
         mTokenData = new TokenData();
     }
 
+    public TokenType getType() {
+        return mType;
+    }
+
+    public TokenFormat getFormat() {
+        return mFormat;
+    }
+
+    public TokenSigType getSigType() {
+        return mSigType;
+    }
+
+    public TokenData getTokenData() {
+        return mTokenData;
+    }
+    
+    /**
+     * @return a copy of this token that shares no mutable state with it
+     */
+    Token copy() {
+        Token t = new Token(mType, mFormat);
+        t.mSigType = mSigType;
+        t.mTokenData = mTokenData.copy();
+        if (mSigned != null) {
+            t.mSigned = Arrays.copyOf(mSigned, mSignedLen);
+            t.mSignedLen = mSignedLen;
+        }
+        return t;
+    }
+    
+    /**
+     * @return a copy of the signature or null if not signed
+     */
+    byte[] signature() {
+        return mSigned == null ? null : Arrays.copyOf(mSigned, Crypto.SIGNATURE_LENGTH);
+    }
+    
+    /**
+     * @return a copy of the signed token bytes or null if not signed
+     */
+    byte[] tokenBytes() {
+        return mSigned == null ? null : Arrays.copyOfRange(mSigned, Crypto.SIGNATURE_LENGTH, mSignedLen);
+    }
+
     @Override
     public int hashCode() {
         final int prime  = 31;
         int       result = 1;
-        //result = prime * result + Arrays.hashCode(mSignature);
-        //result = prime * result + Arrays.hashCode(mTokenBytes);
         result = prime * result + Objects.hash(mFormat, mSigType, mTokenData, mType);
         return result;
     }
@@ -53,8 +128,6 @@ public class Token {
         Token other = (Token) obj;
         return mFormat == other.mFormat 
                 && mSigType == other.mSigType 
-                //&& Arrays.equals(mSignature, other.mSignature)
-                //&& Arrays.equals(mTokenBytes, other.mTokenBytes) 
                 && Objects.equals(mTokenData, other.mTokenData)
                 && mType == other.mType;
     }
@@ -75,31 +148,40 @@ public class Token {
         case UNSIGNED:
             break;
         case ES256K:
-            if (mSignature == null || mSignature.length == 0 
-                || mTokenBytes == null || mTokenBytes.length == 0) {
+            if (mSigned == null || mSignedLen <= Crypto.SIGNATURE_LENGTH) {
                 throw new TokenException("Missing signature or data bytes");
             }
         }
     }
     
     String encodePrefix() {
-        String prefix = mType.getPrefix() + mSigType.getPrefix() + mFormat.getPrefix();
-        if (prefix.length() != prefixLen) {
-            throw new IllegalStateException("expected prefix len: " + prefixLen + ", but was: " + prefix.length());
-        }
-        return prefix;
+        return prefixes[mType.ordinal()][mSigType.ordinal()][mFormat.ordinal()];
     }
     
-    byte[] encodeBytesNoCompression() throws TokenException {
-        byte[] data;
+    // scratch buffer of the uncompressed bytes of compressed formats
+    private static final ThreadLocal<TokenBuffer> rawBuffers = 
+        ThreadLocal.withInitial(() -> new TokenBuffer(1024, 0, false));
+    private static final int MAX_RAW_BUFFER = 64 * 1024;
+    // the maximum length of decompressed token data when decoding: well
+    // above actual tokens, which must fit in an HTTP header
+    static final int MAX_TOKEN_DATA_LENGTH = 64 * 1024;
+    
+    /**
+     * Serializes the token data - uncompressed - into the given buffer.
+     */
+    void encodeBytesNoCompression(TokenBuffer out) throws TokenException {
+        IssuanceMetrics metrics = Metrics.get();
+        long t0 = Metrics.start(metrics);
         
         switch (mFormat) {
         case JSON: 
         case JSON_COMPRESSED:
-            Json json = new Json();
             try {
-                data = json.serialize(mTokenData);
+                if (mJsonTemplate == null || !mJsonTemplate.encode(mTokenData, out)) {
+                    TokenDataJson.encode(mTokenData, out);
+                }
             } catch (Exception e) {
+                metrics.recordFailure(Stage.SERIALIZE, e);
                 throw new TokenException("error serializing token data", e);
             }
             break;
@@ -112,63 +194,276 @@ public class Token {
             throw new TokenException("format not supported: " + mFormat.name());
         }
         
-        return data;
+        Metrics.stop(metrics, Stage.SERIALIZE, t0);
     }
     
+    byte[] encodeBytesNoCompression() throws TokenException {
+        TokenBuffer out = new TokenBuffer(512, 0, false);
+        encodeBytesNoCompression(out);
+        return out.toByteArray();
+    }
     
-    byte[] encodeBytes() throws TokenException {
-        
-        byte[] data = encodeBytesNoCompression();
-        
+    /**
+     * Serializes the token data - compressed for compressed formats - into the
+     * given buffer.
+     * <p>
+     * Compressed formats are serialized into a per-thread scratch buffer and
+     * deflated straight into the given buffer.
+     */
+    void encodeBytes(TokenBuffer out) throws TokenException {
         switch (mFormat) {
         case JSON_COMPRESSED:
         case CBOR_COMPRESSED:
+            TokenBuffer raw = rawBuffers.get();
+            raw.setSize(0);
+            encodeBytesNoCompression(raw);
             
+            IssuanceMetrics metrics = Metrics.get();
+            long t0 = Metrics.start(metrics);
             try {
-                data = Flate.compressData(data);
+                out.ensure(Flate.maxCompressedLength(raw.size()));
+                int n = Flate.compress(raw.array(), 0, raw.size(), out.array(), out.size());
+                out.setSize(out.size() + n);
             } catch (IOException e) {
+                metrics.recordFailure(Stage.COMPRESS, e);
                 throw new TokenException("error compressing data", e);
-            } 
-            
+            } finally {
+                if (raw.array().length > MAX_RAW_BUFFER) {
+                    rawBuffers.remove();
+                }
+            }
+            Metrics.stop(metrics, Stage.COMPRESS, t0);
             break;
         default:
+            encodeBytesNoCompression(out);
             break;
         }
-
-        return data;
     }
     
-    byte[] encodeTokenAndSigBytes() throws TokenException {
-        byte[] data;
+    byte[] encodeBytes() throws TokenException {
+        TokenBuffer out = new TokenBuffer(512, 0, false);
+        encodeBytes(out);
+        return out.toByteArray();
+    }
+    
+    /**
+     * @return the bytes to base58 encode: the signature followed by the token
+     *         bytes if signed, the token bytes otherwise - valid up to
+     *         {@link #payloadLength()}
+     */
+    private byte[] payload() throws TokenException {
         if (mSigType == TokenSigType.UNSIGNED) {
-            data = encodeBytes();
-        } else {
-            data = new byte[mSignature.length+mTokenBytes.length];
-            System.arraycopy(mSignature,0, data,0, mSignature.length);
-            System.arraycopy(mTokenBytes,0, data,mSignature.length, mTokenBytes.length);
+            return encodeBytes();
         }
-        return data;        
+        return mSigned;
+    }
+    
+    private int payloadLength(byte[] payload) {
+        return mSigType == TokenSigType.UNSIGNED ? payload.length : mSignedLen;
+    }
+    
+    /**
+     * @return a copy of the bytes to base58 encode
+     */
+    byte[] encodeTokenAndSigBytes() throws TokenException {
+        byte[] data = payload();
+        int len = payloadLength(data);
+        return len == data.length ? data : Arrays.copyOf(data, len);
     }
     
     public String encode() throws TokenException {
         validate();
         
-        byte[] data = encodeTokenAndSigBytes();
-        return encodePrefix() + Base58Encoder.encode(data);
+        byte[] data = payload();
+        IssuanceMetrics metrics = Metrics.get();
+        long t0 = Metrics.start(metrics);
+        String res = Base58Encoder.encode(encodePrefix(), data, 0, payloadLength(data));
+        Metrics.stop(metrics, Stage.ENCODE, t0);
+        recordIssued(metrics);
+        return res;
+    }
+    
+    /**
+     * Returns an upper bound of the length in bytes of the encoded token - a
+     * capacity suitable for {@link #encodeTo(ByteBuffer)}.
+     * 
+     * @return the maximum length of the encoded token
+     * @throws TokenException if the token is not valid
+     */
+    public int maxEncodedLength() throws TokenException {
+        validate();
+        return prefixLen + FastBase58.maxEncodedLength(payloadLength(payload()));
+    }
+    
+    /**
+     * Returns the exact length in bytes of the encoded token.
+     * <p>
+     * This is about as costly as encoding the token: prefer
+     * {@link #maxEncodedLength()} to size buffers.
+     * 
+     * @return the length of the encoded token
+     * @throws TokenException if the token is not valid
+     */
+    public int encodedLength() throws TokenException {
+        validate();
+        byte[] data = payload();
+        return prefixLen + FastBase58.encodedLength(data, 0, payloadLength(data));
+    }
+    
+    /**
+     * Encodes the token as ASCII bytes into the given buffer at its current
+     * position - as {@link #encode()} but without creating any string.
+     * <p>
+     * The position of the buffer is advanced by the number of bytes written.
+     * Nothing is written if the remaining space is too small.
+     * 
+     * @param buf a heap or direct buffer - see {@link #maxEncodedLength()}
+     * @return the number of bytes written
+     * @throws TokenException if the token is not valid
+     * @throws BufferOverflowException if the remaining space of the buffer is too small
+     */
+    public int encodeTo(ByteBuffer buf) throws TokenException {
+        validate();
+        
+        byte[] data = payload();
+        int len = payloadLength(data);
+        String prefix = encodePrefix();
+        if (buf.remaining() < prefixLen) {
+            throw new BufferOverflowException();
+        }
+        IssuanceMetrics metrics = Metrics.get();
+        long t0 = Metrics.start(metrics);
+        int start = buf.position();
+        for (int i = 0; i < prefixLen; i++) {
+            buf.put((byte) prefix.charAt(i));
+        }
+        try {
+            int n = prefixLen + FastBase58.encode(data, 0, len, buf);
+            metrics.recordPath(Stage.ENCODE, false);
+            Metrics.stop(metrics, Stage.ENCODE, t0);
+            recordIssued(metrics);
+            return n;
+        } catch (BufferOverflowException e) {
+            buf.position(start);
+            metrics.recordFailure(Stage.ENCODE, e);
+            throw e;
+        }
+    }
+    
+    // a signed token is issued when first encoded
+    private void recordIssued(IssuanceMetrics metrics) {
+        if (mIssuePending) {
+            mIssuePending = false;
+            metrics.recordIssued();
+        }
+    }
+    
+    /**
+     * Decodes a 'bearer' string into a token.
+     * <p>
+     * The signature, if any, is not verified.
+     * 
+     * @param s the encoded token
+     * @return the decoded token
+     * @throws TokenException if the string is not a valid token
+     */
+    public static Token decode(String s) throws TokenException {
+        if (s == null || s.length() < prefixLen) {
+            throw new TokenException("invalid token: missing prefix");
+        }
+        TokenType type = TokenType.fromPrefix(s, 0);
+        TokenSigType sigType = TokenSigType.fromPrefix(s, type.mPrefix.length());
+        TokenFormat format = TokenFormat.fromPrefix(s, type.mPrefix.length() + sigType.mPrefix.length());
+        if (type == TokenType.UNKNOWN 
+            || sigType == TokenSigType.UNKNOWN 
+            || format == TokenFormat.UNKNOWN) {
+            throw new TokenException("invalid token: unknown prefix");
+        }
+        
+        byte[] data = new byte[FastBase58.maxDecodedLength(s.length() - prefixLen)];
+        int len = FastBase58.decode(s, prefixLen, s.length() - prefixLen, data, 0);
+        if (len < 0) {
+            throw new TokenException("invalid token: base58 decoding failed");
+        }
+        
+        Token token = new Token(type, format);
+        token.mSigType = sigType;
+        int off = 0;
+        if (sigType == TokenSigType.ES256K) {
+            if (len <= Crypto.SIGNATURE_LENGTH) {
+                throw new TokenException("invalid token: missing signature or data bytes");
+            }
+            off = Crypto.SIGNATURE_LENGTH;
+            token.mSigned = data;
+            token.mSignedLen = len;
+        }
+        token.mTokenData = decodeBytes(format, data, off, len - off);
+        return token;
+    }
+    
+    static TokenData decodeBytes(TokenFormat format, byte[] data, int off, int len) throws TokenException {
+        switch (format) {
+        case JSON_COMPRESSED:
+            try {
+                data = Flate.decompressData(data, off, len, MAX_TOKEN_DATA_LENGTH);
+            } catch (IOException e) {
+                throw new TokenException("error decompressing data", e);
+            }
+            off = 0;
+            len = data.length;
+            break;
+        default:
+            break;
+        }
+        
+        switch (format) {
+        case JSON: 
+        case JSON_COMPRESSED:
+            try {
+                return TokenDataJson.decode(data, off, len);
+            } catch (Exception e) {
+                throw new TokenException("error deserializing token data", e);
+            }
+        case LEGACY:
+        case CBOR:
+        case CBOR_COMPRESSED:    
+        case CUSTOM:
+        default:
+            throw new TokenException("format not supported: " + format.name());
+        }
     }
     
     //sign signs this token using the provided signer.
     void sign(Signer signer) throws TokenException {
 
         mTokenData.EthAddr = signer.getAddress();
-        mTokenBytes = encodeBytes();
+        // the token bytes are hashed as they are written, after the room
+        // left for the signature
+        TokenBuffer buf = new TokenBuffer(512, Crypto.SIGNATURE_LENGTH, true);
+        encodeBytes(buf);
         
+        // as Crypto.sign, with the end of hashing and signing timed separately
+        IssuanceMetrics metrics = Metrics.get();
+        long t0 = Metrics.start(metrics);
+        byte[] hash = buf.digest();
+        t0 = Metrics.stop(metrics, Stage.HASH, t0);
         try {
-            mSignature = Crypto.sign(mTokenBytes, signer);
+            byte[] sig = signer.sign(hash);
+            if (sig == null || sig.length != Crypto.SIGNATURE_LENGTH) {
+                throw new SignException("invalid signature length");
+            }
+            System.arraycopy(sig, 0, buf.array(), 0, Crypto.SIGNATURE_LENGTH);
+            mSigned = buf.array();
+            mSignedLen = buf.size();
             mSigType = TokenSigType.ES256K;
         } catch (SignException ex) {
+            metrics.recordFailure(Stage.SIGN, ex);
             throw new TokenException("", ex);
         }
+        Metrics.stop(metrics, Stage.SIGN, t0);
+        metrics.recordPath(Stage.SIGN, signer.isNative());
+        // issued once encoded
+        mIssuePending = true;
 
     }
     
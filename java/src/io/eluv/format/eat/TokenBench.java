@@ -1,12 +1,28 @@
 package io.eluv.format.eat;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.web3j.crypto.Hash;
+
+import io.eluv.crypto.Crypto;
+import io.eluv.crypto.FastPrivateKey;
 import io.eluv.crypto.KeyFactory;
+import io.eluv.crypto.PrivateKey;
 import io.eluv.crypto.Signer;
+import io.eluv.format.base58.Base58;
+import io.eluv.format.base58.FastBase58;
+import io.eluv.format.base58.NativeB58Encoder;
 import io.eluv.json.Json;
 
 public class TokenBench {
+    
+    static final String PK = "c205dfefd9885f368684ecdeb4e8079ba9d16350403c848da26f3106b83c18e6";
 
     void doTestTokenBenchTest(Signer pk, int runCount) throws Exception {
         
@@ -42,11 +58,289 @@ public class TokenBench {
         System.out.println("token: " + tok);
     }
 
+    List<TokenFactory.EditorSigned> makeSpecs(int count) throws Exception {
+        String sctx = "{\"foo\": \"bar\"}";
+        String spcId = "ispc329GX6UVyuWzwPzqDHm5shxfNgrc";
+        String libId = "ilib329GX6UVyuWzwPzqDHm5shxfNgrc";
+        String qId   = "iq__329GX6UVyuWzwPzqDHm5shxfNgrc";
+        Json json = new Json();
+        @SuppressWarnings("unchecked")
+        HashMap<String,Object> ctx = json.deserialize(sctx, HashMap.class);
+        
+        List<TokenFactory.EditorSigned> specs = new ArrayList<>(count);
+        for (int i=0; i< count; i++) {
+            TokenFactory.EditorSigned es = new TokenFactory.EditorSigned(
+                    spcId, 
+                    libId, 
+                    qId,
+                    false)
+                    .withExpiresIn(TokenFactory.HOUR * 24);
+            es.withDelegationId("iq__329GX6UVyuWzwPzqDHm5shxfNgrc");
+            es.withContext(ctx);
+            specs.add(es);
+        }
+        return specs;
+    }
+    
+    void doBatchBench(Signer pk, int runCount) throws Exception {
+        System.out.println("");
+        System.out.println("Batch signing of " + runCount + " tokens.");
+        
+        // the same builders are signed again by each run
+        List<TokenFactory.EditorSigned> specs = makeSpecs(runCount);
+        double serial = printThroughput("serial", runCount, timed(runCount, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                specs.get(i).signEncode(pk);
+            }
+        }), 0);
+        
+        // caller thread signs one chunk as well 
+        scaling("batch (%d threads + caller)", runCount, serial, (pool, threads) -> {
+            for (TokenFactory.SignResult r : TokenFactory.signEncodeAll(specs, pk, pool)) {
+                if (!r.isOk()) {
+                    throw r.getError();
+                }
+            }
+        });
+    }
+    
+    void doVerifyBench(Signer pk, int runCount) throws Exception {
+        System.out.println("");
+        System.out.println("Verification of " + runCount + " tokens.");
+        
+        List<String> tokens = new ArrayList<>(runCount);
+        for (TokenFactory.SignResult r : TokenFactory.signEncodeAll(makeSpecs(runCount), pk)) {
+            if (!r.isOk()) {
+                throw r.getError();
+            }
+            tokens.add(r.getToken());
+        }
+        TokenVerifier verifier = new TokenVerifier.Builder().withTrustedSigners(pk.getAddress()).build();
+        RangeTask verify = (from, to) -> {
+            for (int i = from; i < to; i++) {
+                verifier.verify(tokens.get(i));
+            }
+        };
+        double serial = printThroughput("serial", runCount, timed(runCount, verify), 0);
+        
+        // cache hits only
+        CachingTokenVerifier cached = new CachingTokenVerifier(verifier, runCount, Long.MAX_VALUE);
+        for (String tok : tokens) {
+            cached.verify(tok);
+        }
+        int rounds = 100;
+        long t0 = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (String tok : tokens) {
+                cached.verify(tok);
+            }
+        }
+        printThroughput("cached (hits)", runCount * rounds, System.nanoTime() - t0, serial);
+        
+        scaling("parallel (%d threads)", runCount, serial, chunked(runCount, verify));
+    }
+    
+    void doFormatsBench(Signer pk, int runCount) throws Exception {
+        System.out.println("");
+        System.out.println("Signing " + runCount + " tokens per format.");
+        
+        String sctx = "{\"foo\": \"bar\"}";
+        Json json = new Json();
+        @SuppressWarnings("unchecked")
+        HashMap<String,Object> ctx = json.deserialize(sctx, HashMap.class);
+        TokenFormat[] formats = new TokenFormat[] {
+            TokenFormat.JSON,
+            TokenFormat.JSON_COMPRESSED,
+        };
+        
+        double reference = 0;
+        for (TokenFormat format : formats) {
+            EditorSignedTemplate tpl = new EditorSignedTemplate.Builder(
+                "ispc329GX6UVyuWzwPzqDHm5shxfNgrc", 
+                "ilib329GX6UVyuWzwPzqDHm5shxfNgrc", 
+                "iq__329GX6UVyuWzwPzqDHm5shxfNgrc",
+                format)
+                .withExpiresIn(TokenFactory.HOUR * 24)
+                .withDelegationId("iq__329GX6UVyuWzwPzqDHm5shxfNgrc")
+                .withContext(ctx)
+                .build();
+            String tok = "";
+            long t0 = System.nanoTime();
+            for (int i = 0; i < runCount; i++) {
+                tok = tpl.signEncode(pk);
+            }
+            double perSec = printThroughput(
+                format.getName() + " (" + tok.length() + " chars)", 
+                runCount, 
+                System.nanoTime() - t0, 
+                reference);
+            if (reference == 0) {
+                reference = perSec;
+            }
+        }
+    }
+    
+    void doSignerScalingBench(Signer[] signers, int runCount) throws Exception {
+        System.out.println("");
+        System.out.println("Signing " + runCount + " digests per signer shared by all threads.");
+        
+        byte[][] digests = new byte[runCount][];
+        for (int i = 0; i < runCount; i++) {
+            digests[i] = Hash.sha3(("token " + i).getBytes());
+        }
+        for (Signer signer : signers) {
+            scaling(signer.getClass().getSimpleName() + " (%d threads)", runCount, 0, chunked(runCount, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    signer.sign(digests[i]);
+                }
+            }));
+        }
+    }
+    
+    // the work of one thread: the items from 'from' (inclusive) to 'to'
+    interface RangeTask {
+        void run(int from, int to) throws Exception;
+    }
+    
+    // one run of a scaling benchmark on the given pool
+    interface PoolRun {
+        void run(ExecutorService pool, int threads) throws Exception;
+    }
+    
+    /**
+     * Runs the given task on all items on the calling thread: once to warm up,
+     * then measured.
+     * 
+     * @return the duration of the measured run in nanos
+     */
+    static long timed(int count, RangeTask task) throws Exception {
+        task.run(0, count);
+        long t0 = System.nanoTime();
+        task.run(0, count);
+        return System.nanoTime() - t0;
+    }
+    
+    /**
+     * @return a run splitting the items in one chunk per thread
+     */
+    static PoolRun chunked(int count, RangeTask task) {
+        return (pool, threads) -> {
+            int chunkSize = (count + threads - 1) / threads;
+            List<Future<?>> futures = new ArrayList<>();
+            for (int from = 0; from < count; from += chunkSize) {
+                int start = from;
+                int end = Math.min(count, from + chunkSize);
+                futures.add(pool.submit(() -> {
+                    task.run(start, end);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        };
+    }
+    
+    /**
+     * Runs on pools of 1, 2, 4 ... up to all cores threads and prints the
+     * throughput of each: a warmup run precedes the measured one on each pool.
+     * 
+     * @param name the name of the runs, with a %d for the number of threads
+     * @param count the number of items of a run
+     * @param reference the throughput speedups are relative to - 0 for the
+     *        first run
+     * @param run a run
+     */
+    static void scaling(String name, int count, double reference, PoolRun run) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; ; threads *= 2) {
+            threads = Math.min(threads, cores);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                run.run(pool, threads);
+                long t0 = System.nanoTime();
+                run.run(pool, threads);
+                double perSec = printThroughput(String.format(name, threads), count, System.nanoTime() - t0, reference);
+                if (reference == 0) {
+                    reference = perSec;
+                }
+            } finally {
+                pool.shutdown();
+            }
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+    
+    static double printThroughput(String name, int count, long nanos, double reference) {
+        double perSec = count * 1e9 / nanos;
+        String speedup = reference > 0 
+            ? String.format(" - speedup: %.2fx", perSec / reference) 
+            : "";
+        System.out.println(String.format(
+            "%-30s %6d millis, %12.0f tokens/s%s", 
+            name, nanos / 1000000, perSec, speedup));
+        return perSec;
+    }
+    
+    void doBase58Bench(int runCount) throws Exception {
+        System.out.println("");
+        System.out.println("Base58 encoding " + runCount + " token payloads.");
+        
+        // signature and data of a typical token
+        byte[] data = new byte[Crypto.SIGNATURE_LENGTH + 400];
+        new Random(1).nextBytes(data);
+        
+        long t0 = System.nanoTime();
+        for (int i = 0; i < runCount; i++) {
+            Base58.encode(data);
+        }
+        double reference = printThroughput("base58", runCount, System.nanoTime() - t0, 0);
+        
+        if (NativeB58Encoder.hasLib()) {
+            t0 = System.nanoTime();
+            for (int i = 0; i < runCount; i++) {
+                NativeB58Encoder.encode(data);
+            }
+            printThroughput("base58 native", runCount, System.nanoTime() - t0, reference);
+        }
+        
+        t0 = System.nanoTime();
+        for (int i = 0; i < runCount; i++) {
+            FastBase58.encode(data);
+        }
+        printThroughput("base58 fast", runCount, System.nanoTime() - t0, reference);
+        
+        String encoded = FastBase58.encode(data);
+        t0 = System.nanoTime();
+        for (int i = 0; i < runCount; i++) {
+            Base58.decode(encoded);
+        }
+        reference = printThroughput("base58 decode", runCount, System.nanoTime() - t0, 0);
+        
+        byte[] out = new byte[FastBase58.maxDecodedLength(encoded.length())];
+        t0 = System.nanoTime();
+        for (int i = 0; i < runCount; i++) {
+            FastBase58.decode(encoded, 0, encoded.length(), out, 0);
+        }
+        printThroughput("base58 fast decode", runCount, System.nanoTime() - t0, reference);
+    }
     
     public static void main(String[] args) throws Exception {
         TokenBench t = new TokenBench();
-        Signer pk = KeyFactory.createSigner("c205dfefd9885f368684ecdeb4e8079ba9d16350403c848da26f3106b83c18e6");
+        Signer pk = KeyFactory.createSigner(PK);
         t.doTestTokenBenchTest(pk, 10000);
+        t.doFormatsBench(pk, 10000);
+        t.doBatchBench(pk, 10000);
+        t.doVerifyBench(pk, 10000);
+        t.doBase58Bench(10000);
+        t.doSignerScalingBench(new Signer[] {
+            pk,
+            new Signer.KeyPairSigner(Crypto.KeyPairFrom(PK)),
+            new PrivateKey(Crypto.KeyPairFrom(PK)),
+            new FastPrivateKey(PK),
+        }, 2000);
         
         System.out.println();
         Natives.printReport();        
@@ -0,0 +1,120 @@
+package io.eluv.format.eat;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import io.eluv.crypto.Keccak256;
+
+/**
+ * TokenBuffer is a growable buffer the token bytes are serialized - or
+ * compressed - into, with room reserved at the front for the signature.
+ * <p>
+ * When hashing, bytes written through the stream methods are hashed as they
+ * are written; bytes written in place - see {@link #ensure(int)} and
+ * {@link #setSize(int)} - are hashed by {@link #digest()}.
+ */
+final class TokenBuffer extends OutputStream {
+
+    private final int       mStart;
+    private final Keccak256 mHash;
+    private byte[]          mBuf;
+    private int             mLen;
+    // end of the bytes absorbed by mHash
+    private int             mHashed;
+
+    /**
+     * @param capacity initial capacity, not including the reserved bytes
+     * @param reserved number of bytes reserved at the front
+     * @param hash     true to hash the bytes written after the reserved ones
+     */
+    TokenBuffer(int capacity, int reserved, boolean hash) {
+        mBuf = new byte[reserved + capacity];
+        mStart = reserved;
+        mLen = reserved;
+        mHashed = reserved;
+        mHash = hash ? new Keccak256() : null;
+    }
+
+    /**
+     * @return the internal buffer - valid up to {@link #size()}
+     */
+    byte[] array() {
+        return mBuf;
+    }
+
+    /**
+     * @return the end of the written bytes, including the reserved ones
+     */
+    int size() {
+        return mLen;
+    }
+
+    /**
+     * @return the number of bytes written after the reserved ones
+     */
+    int length() {
+        return mLen - mStart;
+    }
+
+    /**
+     * Ensures that at least n more bytes can be written in place at
+     * {@link #size()}.
+     */
+    void ensure(int n) {
+        if (mLen + n > mBuf.length) {
+            mBuf = Arrays.copyOf(mBuf, Math.max(mBuf.length * 2, mLen + n));
+        }
+    }
+
+    /**
+     * Sets the end of the written bytes - after writing in place.
+     */
+    void setSize(int size) {
+        if (size < mHashed || size > mBuf.length) {
+            throw new IndexOutOfBoundsException("size " + size);
+        }
+        mLen = size;
+    }
+
+    @Override
+    public void write(int b) {
+        ensure(1);
+        mBuf[mLen++] = (byte) b;
+        absorb();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensure(len);
+        System.arraycopy(b, off, mBuf, mLen, len);
+        mLen += len;
+        absorb();
+    }
+
+    private void absorb() {
+        if (mHash != null && mHashed < mLen) {
+            mHash.update(mBuf, mHashed, mLen - mHashed);
+            mHashed = mLen;
+        }
+    }
+
+    /**
+     * @return the Keccak-256 digest of the bytes written after the reserved
+     *         ones
+     */
+    byte[] digest() {
+        if (mHash == null) {
+            throw new IllegalStateException("not hashing");
+        }
+        absorb();
+        return mHash.digest();
+    }
+
+    /**
+     * @return a copy of the bytes written after the reserved ones
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOfRange(mBuf, mStart, mLen);
+    }
+
+}
@@ -1,8 +1,16 @@
 package io.eluv.format.eat;
 
+import java.lang.reflect.Array;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -41,6 +49,62 @@ public class TokenData {
     TokenData() {
         Ctx = new HashMap<String,Object>();
     }
+    
+    /**
+     * @return a deep copy of this token data - the maps, collections and
+     *         arrays of the context included
+     */
+    TokenData copy() {
+        TokenData td = new TokenData();
+        td.EthTxHash = EthTxHash == null ? null : EthTxHash.clone();
+        td.EthAddr = EthAddr == null ? null : EthAddr.clone();
+        td.AFGHPublicKey = AFGHPublicKey;
+        td.QPHash = QPHash;
+        td.SID = SID;
+        td.LID = LID;
+        td.QID = QID;
+        td.Subject = Subject;
+        td.Grant = Grant;
+        td.IssuedAt = IssuedAt;
+        td.Expires = Expires;
+        if (Ctx == null) {
+            td.Ctx = null;
+        } else {
+            for (Map.Entry<String,Object> e : Ctx.entrySet()) {
+                td.Ctx.put(e.getKey(), copyValue(e.getValue()));
+            }
+        }
+        return td;
+    }
+    
+    // other values - as decoded: strings, numbers, booleans - are immutable
+    private static Object copyValue(Object v) {
+        if (v instanceof Map) {
+            Map<Object,Object> copy = new LinkedHashMap<Object,Object>();
+            for (Map.Entry<?,?> e : ((Map<?,?>) v).entrySet()) {
+                copy.put(e.getKey(), copyValue(e.getValue()));
+            }
+            return copy;
+        }
+        if (v instanceof List || v instanceof Set) {
+            Collection<Object> copy = v instanceof List 
+                ? new ArrayList<Object>() 
+                : new LinkedHashSet<Object>();
+            for (Object o : (Collection<?>) v) {
+                copy.add(copyValue(o));
+            }
+            return copy;
+        }
+        if (v != null && v.getClass().isArray()) {
+            int len = Array.getLength(v);
+            Object copy = Array.newInstance(v.getClass().getComponentType(), len);
+            for (int i = 0; i < len; i++) {
+                Array.set(copy, i, copyValue(Array.get(v, i)));
+            }
+            return copy;
+        }
+        return v;
+    }
 
 
     @Override
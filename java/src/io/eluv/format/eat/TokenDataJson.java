@@ -0,0 +1,406 @@
+package io.eluv.format.eat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.eluv.json.Json;
+
+/**
+ * TokenDataJson encodes and decodes TokenData in JSON without data binding.
+ * <p>
+ * The encoding is byte-identical to the one of the JSON object mapper: fields
+ * in declaration order, null fields and null values of maps omitted and byte
+ * arrays as base64. Context values of types other than strings, numbers,
+ * booleans, maps, collections and arrays are written with the object mapper.
+ * <p>
+ * When decoding, context values are read like untyped values of the object
+ * mapper: objects as {@link LinkedHashMap}, arrays as {@link ArrayList},
+ * integers as Integer, Long or BigInteger and floating point numbers as Double.
+ */
+final class TokenDataJson {
+
+    // shared by all threads: only used for its factory and for unknown types
+    private static final ObjectMapper mapper  = new Json().getMapper();
+    private static final JsonFactory  factory = mapper.getFactory();
+
+    private TokenDataJson() {
+    }
+
+    static byte[] encode(TokenData td) throws IOException {
+        ByteArrayBuilder out = new ByteArrayBuilder(512);
+        try (JsonGenerator g = factory.createGenerator(out)) {
+            encode(td, g);
+        }
+        return out.toByteArray();
+    }
+
+    static void encode(TokenData td, OutputStream out) throws IOException {
+        try (JsonGenerator g = factory.createGenerator(out)) {
+            encode(td, g);
+        }
+    }
+
+    static void encode(TokenData td, JsonGenerator g) throws IOException {
+        g.writeStartObject();
+        if (td.EthTxHash != null) {
+            g.writeFieldName("txh");
+            g.writeBinary(td.EthTxHash);
+        }
+        if (td.EthAddr != null) {
+            g.writeFieldName("adr");
+            g.writeBinary(td.EthAddr);
+        }
+        writeString(g, "apk", td.AFGHPublicKey);
+        writeString(g, "qph", td.QPHash);
+        writeString(g, "spc", td.SID);
+        writeString(g, "lib", td.LID);
+        writeString(g, "qid", td.QID);
+        writeString(g, "sub", td.Subject);
+        writeString(g, "gra", td.Grant);
+        g.writeNumberField("iat", td.IssuedAt);
+        g.writeNumberField("exp", td.Expires);
+        if (td.Ctx != null) {
+            g.writeFieldName("ctx");
+            writeMap(g, td.Ctx);
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeString(JsonGenerator g, String name, String value) throws IOException {
+        if (value != null) {
+            g.writeStringField(name, value);
+        }
+    }
+
+    private static void writeMap(JsonGenerator g, Map<?, ?> m) throws IOException {
+        g.writeStartObject();
+        for (Map.Entry<?, ?> e : m.entrySet()) {
+            if (e.getValue() == null) {
+                continue;
+            }
+            g.writeFieldName(String.valueOf(e.getKey()));
+            writeValue(g, e.getValue());
+        }
+        g.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator g, Object v) throws IOException {
+        if (v == null) {
+            g.writeNull();
+        } else if (v instanceof String) {
+            g.writeString((String) v);
+        } else if (v instanceof Integer) {
+            g.writeNumber((Integer) v);
+        } else if (v instanceof Long) {
+            g.writeNumber((Long) v);
+        } else if (v instanceof Boolean) {
+            g.writeBoolean((Boolean) v);
+        } else if (v instanceof Double) {
+            g.writeNumber((Double) v);
+        } else if (v instanceof BigInteger) {
+            g.writeNumber((BigInteger) v);
+        } else if (v instanceof BigDecimal) {
+            g.writeNumber((BigDecimal) v);
+        } else if (v instanceof Map && hasStringKeys((Map<?, ?>) v)) {
+            writeMap(g, (Map<?, ?>) v);
+        } else if (v instanceof Collection) {
+            g.writeStartArray();
+            for (Object o : (Collection<?>) v) {
+                writeValue(g, o);
+            }
+            g.writeEndArray();
+        } else if (v instanceof Object[]) {
+            g.writeStartArray();
+            for (Object o : (Object[]) v) {
+                writeValue(g, o);
+            }
+            g.writeEndArray();
+        } else {
+            mapper.writeValue(g, v);
+        }
+    }
+
+    private static boolean hasStringKeys(Map<?, ?> m) {
+        for (Object k : m.keySet()) {
+            if (!(k instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Template is the pre-encoded JSON of the fields shared by the tokens of
+     * an {@link EditorSignedTemplate}: only the address, subject, issued at
+     * and expiration are written per token, between the static fragments.
+     * <p>
+     * The output is the same as {@link TokenDataJson#encode(TokenData, OutputStream)}
+     * for token data whose other fields are those the template was built
+     * from.
+     */
+    static final class Template {
+        private static final byte[] ADR = ascii("{\"adr\":\"");
+        private static final byte[] EXP = ascii(",\"exp\":");
+
+        // from the end of the address to the start of the subject
+        private final byte[] mHead;
+        // from the end of the subject to the start of issued at
+        private final byte[] mMid;
+        // after expiration, including the closing brace
+        private final byte[] mTail;
+
+        /**
+         * @param td the token data holding the static fields: AFGH public key,
+         *           qphash, IDs, grant and context
+         */
+        Template(TokenData td) throws IOException {
+            byte[] ids = fields(td.AFGHPublicKey, td.QPHash, td.SID, td.LID, td.QID);
+            mHead = concat(ascii("\","), ids, ascii(ids.length == 0 ? "\"sub\":\"" : ",\"sub\":\""));
+            if (td.Grant == null) {
+                mMid = ascii("\",\"iat\":");
+            } else {
+                mMid = concat(ascii("\","), fields(td.Grant), ascii(",\"iat\":"));
+            }
+            if (td.Ctx == null) {
+                mTail = ascii("}");
+            } else {
+                ByteArrayBuilder out = new ByteArrayBuilder(512);
+                try (JsonGenerator g = factory.createGenerator(out)) {
+                    g.writeStartObject();
+                    g.writeFieldName("ctx");
+                    writeMap(g, td.Ctx);
+                    g.writeEndObject();
+                }
+                byte[] ctx = out.toByteArray();
+                // ,"ctx":{...}} - from the object holding only the context
+                ctx[0] = ',';
+                mTail = ctx;
+            }
+        }
+
+        /**
+         * Encodes the given token data, unless its address or subject can't
+         * be written as is.
+         *
+         * @return false if nothing was written
+         */
+        boolean encode(TokenData td, OutputStream out) throws IOException {
+            if (td.EthTxHash != null || td.EthAddr == null || !isPlain(td.Subject)) {
+                return false;
+            }
+            out.write(ADR);
+            out.write(Base64.getEncoder().encode(td.EthAddr));
+            out.write(mHead);
+            for (int i = 0; i < td.Subject.length(); i++) {
+                out.write(td.Subject.charAt(i));
+            }
+            out.write(mMid);
+            writeLong(out, td.IssuedAt);
+            out.write(EXP);
+            writeLong(out, td.Expires);
+            out.write(mTail);
+            return true;
+        }
+
+        // the JSON of the given string fields without the enclosing braces
+        private static byte[] fields(String... values) throws IOException {
+            ByteArrayBuilder out = new ByteArrayBuilder(256);
+            try (JsonGenerator g = factory.createGenerator(out)) {
+                g.writeStartObject();
+                if (values.length == 1) {
+                    writeString(g, "gra", values[0]);
+                } else {
+                    writeString(g, "apk", values[0]);
+                    writeString(g, "qph", values[1]);
+                    writeString(g, "spc", values[2]);
+                    writeString(g, "lib", values[3]);
+                    writeString(g, "qid", values[4]);
+                }
+                g.writeEndObject();
+            }
+            byte[] obj = out.toByteArray();
+            return Arrays.copyOfRange(obj, 1, obj.length - 1);
+        }
+
+        // printable ASCII that the generator writes without escaping
+        private static boolean isPlain(String s) {
+            if (s == null) {
+                return false;
+            }
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x20 || c > 0x7e || c == '"' || c == '\\') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void writeLong(OutputStream out, long v) throws IOException {
+            if (v == Long.MIN_VALUE) {
+                out.write(ascii(Long.toString(v)));
+                return;
+            }
+            byte[] digits = new byte[20];
+            int pos = digits.length;
+            boolean neg = v < 0;
+            if (neg) {
+                v = -v;
+            }
+            do {
+                digits[--pos] = (byte) ('0' + v % 10);
+                v /= 10;
+            } while (v != 0);
+            if (neg) {
+                digits[--pos] = '-';
+            }
+            out.write(digits, pos, digits.length - pos);
+        }
+
+        private static byte[] ascii(String s) {
+            return s.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        private static byte[] concat(byte[]... parts) {
+            int n = 0;
+            for (byte[] p : parts) {
+                n += p.length;
+            }
+            byte[] res = new byte[n];
+            n = 0;
+            for (byte[] p : parts) {
+                System.arraycopy(p, 0, res, n, p.length);
+                n += p.length;
+            }
+            return res;
+        }
+    }
+
+    static TokenData decode(byte[] data, int off, int len) throws IOException {
+        try (JsonParser p = factory.createParser(data, off, len)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(p, "expected token data object");
+            }
+            TokenData td = new TokenData();
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String name = p.getCurrentName();
+                JsonToken t = p.nextToken();
+                switch (name) {
+                case "txh": td.EthTxHash = readBinary(p, t); break;
+                case "adr": td.EthAddr = readBinary(p, t); break;
+                case "apk": td.AFGHPublicKey = readString(p, t); break;
+                case "qph": td.QPHash = readString(p, t); break;
+                case "spc": td.SID = readString(p, t); break;
+                case "lib": td.LID = readString(p, t); break;
+                case "qid": td.QID = readString(p, t); break;
+                case "sub": td.Subject = readString(p, t); break;
+                case "gra": td.Grant = readString(p, t); break;
+                case "iat": td.IssuedAt = readLong(p, t); break;
+                case "exp": td.Expires = readLong(p, t); break;
+                case "ctx":
+                    if (t == JsonToken.VALUE_NULL) {
+                        td.Ctx = null;
+                    } else if (t == JsonToken.START_OBJECT) {
+                        td.Ctx = readObject(p, new HashMap<String, Object>());
+                    } else {
+                        throw new JsonParseException(p, "invalid context");
+                    }
+                    break;
+                default:
+                    // ignore unknown fields
+                    p.skipChildren();
+                }
+            }
+            if (p.currentToken() != JsonToken.END_OBJECT) {
+                throw new JsonParseException(p, "unexpected end of token data");
+            }
+            return td;
+        }
+    }
+
+    private static byte[] readBinary(JsonParser p, JsonToken t) throws IOException {
+        return t == JsonToken.VALUE_NULL ? null : p.getBinaryValue();
+    }
+
+    private static String readString(JsonParser p, JsonToken t) throws IOException {
+        if (t == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!t.isScalarValue()) {
+            throw new JsonParseException(p, "expected string for field " + p.getCurrentName());
+        }
+        return p.getText();
+    }
+
+    private static long readLong(JsonParser p, JsonToken t) throws IOException {
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            return p.getLongValue();
+        }
+        if (t == JsonToken.VALUE_NULL) {
+            return 0;
+        }
+        throw new JsonParseException(p, "expected integer for field " + p.getCurrentName());
+    }
+
+    private static <M extends Map<String, Object>> M readObject(JsonParser p, M m) throws IOException {
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String name = p.getCurrentName();
+            m.put(name, readValue(p, p.nextToken()));
+        }
+        if (p.currentToken() != JsonToken.END_OBJECT) {
+            throw new JsonParseException(p, "unexpected end of object");
+        }
+        return m;
+    }
+
+    private static Object readValue(JsonParser p, JsonToken t) throws IOException {
+        if (t == null) {
+            throw new JsonParseException(p, "unexpected end of data");
+        }
+        switch (t) {
+        case START_OBJECT:
+            return readObject(p, new LinkedHashMap<String, Object>());
+        case START_ARRAY: {
+            List<Object> l = new ArrayList<Object>();
+            JsonToken n;
+            while ((n = p.nextToken()) != JsonToken.END_ARRAY) {
+                l.add(readValue(p, n));
+            }
+            return l;
+        }
+        case VALUE_STRING:
+            return p.getText();
+        case VALUE_NUMBER_INT:
+            return p.getNumberValue();
+        case VALUE_NUMBER_FLOAT:
+            return Double.valueOf(p.getDoubleValue());
+        case VALUE_TRUE:
+            return Boolean.TRUE;
+        case VALUE_FALSE:
+            return Boolean.FALSE;
+        case VALUE_NULL:
+            return null;
+        default:
+            throw new JsonParseException(p, "unexpected token: " + t);
+        }
+    }
+}
@@ -1,7 +1,19 @@
 package io.eluv.format.eat;
 
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.web3j.crypto.ECKeyPair;
 
@@ -18,6 +30,135 @@ import io.eluv.format.id.Id;
 public class TokenFactory {
     static final long HOUR = 3600 * 1000;
     
+    // number of chunks per thread of the executor when signing in batch
+    private static final int CHUNKS_PER_THREAD = 4;
+    
+    /**
+     * SignResult is the result of signing one token of a batch: either the 
+     * 'bearer' string or the error that prevented its creation.
+     */
+    public static class SignResult {
+        private final String         mToken;
+        private final TokenException mError;
+        
+        SignResult(String token, TokenException error) {
+            mToken = token;
+            mError = error;
+        }
+        
+        /**
+         * @return the 'bearer' string or null if signing failed
+         */
+        public String getToken() {
+            return mToken;
+        }
+        
+        /**
+         * @return the error or null if signing succeeded
+         */
+        public TokenException getError() {
+            return mError;
+        }
+        
+        public boolean isOk() {
+            return mError == null;
+        }
+    }
+    
+    /**
+     * Signs and encodes a batch of tokens using all cores of the common 
+     * fork-join pool.
+     * 
+     * @param specs the tokens to sign
+     * @param sk the signer - must be safe for concurrent use
+     * @return the results in the order of the given specs
+     * @see #signEncodeAll(Collection, Signer, Executor)
+     */
+    public static List<SignResult> signEncodeAll(
+        Collection<EditorSigned> specs, 
+        Signer sk) {
+        
+        return signEncodeAll(specs, sk, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Signs and encodes a batch of tokens using the given executor.
+     * <p>
+     * Tokens are split in chunks signed concurrently; one chunk is signed on 
+     * the calling thread, as well as the chunks the executor rejects. An 
+     * error signing a token is reported in its result and does not fail the 
+     * other tokens of the batch.
+     * <p>
+     * Signing sets the address, subject and signature of each builder: the 
+     * same builder can't be given twice.
+     * 
+     * @param specs the tokens to sign
+     * @param sk the signer - must be safe for concurrent use
+     * @param executor the executor running the chunks
+     * @return the results in the order of the given specs
+     * @throws IllegalArgumentException if a builder is given more than once
+     */
+    public static List<SignResult> signEncodeAll(
+        Collection<EditorSigned> specs, 
+        Signer sk, 
+        Executor executor) {
+        
+        EditorSigned[] es = specs.toArray(new EditorSigned[specs.size()]);
+        SignResult[] res = new SignResult[es.length];
+        if (es.length == 0) {
+            return new ArrayList<SignResult>();
+        }
+        Set<EditorSigned> seen = Collections.newSetFromMap(new IdentityHashMap<EditorSigned, Boolean>(es.length));
+        for (EditorSigned e : es) {
+            if (!seen.add(e)) {
+                throw new IllegalArgumentException("builder given more than once");
+            }
+        }
+        
+        int threads = executor instanceof ForkJoinPool 
+            ? ((ForkJoinPool) executor).getParallelism() + 1 
+            : Runtime.getRuntime().availableProcessors();
+        int chunks = Math.min(es.length, Math.max(1, threads * CHUNKS_PER_THREAD));
+        int chunkSize = (es.length + chunks - 1) / chunks;
+        
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunks);
+        for (int from = chunkSize; from < es.length; from += chunkSize) {
+            int start = from;
+            int end = Math.min(es.length, from + chunkSize);
+            try {
+                futures.add(CompletableFuture.runAsync(
+                    () -> signEncodeRange(es, res, start, end, sk), 
+                    executor));
+            } catch (RejectedExecutionException e) {
+                // saturated or shut down
+                signEncodeRange(es, res, start, end, sk);
+            }
+        }
+        signEncodeRange(es, res, 0, Math.min(es.length, chunkSize), sk);
+        for (CompletableFuture<Void> f : futures) {
+            f.join();
+        }
+        return Arrays.asList(res);
+    }
+    
+    private static void signEncodeRange(
+        EditorSigned[] es, 
+        SignResult[] res, 
+        int from, 
+        int to, 
+        Signer sk) {
+        
+        for (int i = from; i < to; i++) {
+            try {
+                res[i] = new SignResult(es[i].signEncode(sk), null);
+            } catch (TokenException e) {
+                res[i] = new SignResult(null, e);
+            } catch (Throwable e) {
+                res[i] = new SignResult(null, new TokenException("", e));
+            }
+        }
+    }
+    
     
     public static class EditorSigned {
         
@@ -44,9 +185,21 @@ public class TokenFactory {
          * @param compressed true to use compressed format
          */
         public EditorSigned(String sid, String lid, String qid, boolean compressed) throws TokenException {
-            TokenFormat format = compressed 
+            this(sid, lid, qid, compressed 
                 ? TokenFormat.JSON_COMPRESSED 
-                : TokenFormat.JSON;
+                : TokenFormat.JSON);
+        }
+        
+        /**
+         * Construct a new EditorSigned builder.
+         * 
+         * @param sid the space ID
+         * @param lib the library ID
+         * @param qid the content ID
+         * @param format the format of the token: JSON, compressed or not
+         */
+        public EditorSigned(String sid, String lid, String qid, TokenFormat format) throws TokenException {
+            validateFormat(format);
             mToken = new Token(TokenType.EDITOR_SIGNED, format);
             mToken.mTokenData.Grant = "read";
             long now = System.currentTimeMillis();
@@ -55,6 +208,35 @@ public class TokenFactory {
             // allow 4 hours validity - note: fabric cap is 24 hours
             mToken.mTokenData.Expires = now + (HOUR * 4);
             
+            validateIds(sid, lid, qid);
+
+            mToken.mTokenData.SID = sid;
+            mToken.mTokenData.LID = lid;
+            mToken.mTokenData.QID = qid;
+        }
+        
+        /**
+         * Construct a new EditorSigned builder around an already initialized 
+         * token, whose IDs were validated by the caller.
+         * 
+         * @param token the token to build
+         */
+        EditorSigned(Token token) {
+            mToken = token;
+        }
+        
+        // tokens are only encoded in JSON
+        static void validateFormat(TokenFormat format) throws TokenException {
+            switch (format) {
+            case JSON:
+            case JSON_COMPRESSED:
+                break;
+            default:
+                throw new TokenException("format not supported: " + format.name());
+            }
+        }
+        
+        static void validateIds(String sid, String lid, String qid) throws TokenException {
             try {
                 // validate IDs
                 new Id(sid).assertCode(Id.Code.QSpace);
@@ -63,10 +245,6 @@ public class TokenFactory {
             } catch (Exception e) {
                 throw new TokenException("", e);
             }
-
-            mToken.mTokenData.SID = sid;
-            mToken.mTokenData.LID = lid;
-            mToken.mTokenData.QID = qid;
         }
         
         /**
@@ -168,13 +346,27 @@ public class TokenFactory {
          * @throws TokenException
          */
         public String signEncode(Signer sk) throws TokenException {
+            return sign(sk).encode();
+        }
+        
+        /**
+         * Signs the token without encoding it.
+         * <p>
+         * The returned token can then be encoded into a buffer with
+         * {@link Token#encodeTo(ByteBuffer)}.
+         * 
+         * @param sk the SECP-256k1 key pair to sign the token
+         * @return the signed token
+         * @throws TokenException
+         */
+        public Token sign(Signer sk) throws TokenException {
             try {
                 if (mToken.mTokenData.Subject == null || 
                     mToken.mTokenData.Subject.length() == 0) {
                     mToken.mTokenData.Subject = new Id(Id.Code.User,sk.getAddress()).toString();
                 }
                 mToken.sign(sk);
-                return mToken.encode();
+                return mToken;
             } catch (TokenException e) {
                 throw e;
             } catch (Exception e) {
@@ -182,6 +374,21 @@ public class TokenFactory {
             }
         }
         
+        /**
+         * Signs and encodes the token as ASCII bytes into the given buffer at
+         * its current position.
+         * 
+         * @param sk  the SECP-256k1 key pair to sign the token
+         * @param buf a heap or direct buffer
+         * @return the number of bytes written
+         * @throws TokenException
+         * @throws java.nio.BufferOverflowException if the remaining space of the buffer is too small
+         * @see Token#encodeTo(ByteBuffer)
+         */
+        public int signEncodeTo(Signer sk, ByteBuffer buf) throws TokenException {
+            return sign(sk).encodeTo(buf);
+        }
+        
         String encode() throws TokenException {
             try {
                 return mToken.encode();
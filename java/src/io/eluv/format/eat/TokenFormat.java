@@ -9,6 +9,8 @@ public enum TokenFormat {
     CBOR_COMPRESSED("cc", "cbor-compressed"), // 5
     CUSTOM("b_", "custom");                   // 6
 
+    private static final TokenFormat[] VALUES = values();
+
     String mPrefix;
     String mName;
 
@@ -25,4 +27,20 @@ public enum TokenFormat {
         return mName;
     }
 
+    /**
+     * Returns the TokenFormat whose prefix starts at the given offset of the string.
+     * 
+     * @param s the string
+     * @param offset the offset of the prefix in s
+     * @return the matching TokenFormat or UNKNOWN
+     */
+    static TokenFormat fromPrefix(String s, int offset) {
+        for (TokenFormat t : VALUES) {
+            if (s.startsWith(t.mPrefix, offset)) {
+                return t;
+            }
+        }
+        return UNKNOWN;
+    }
+
 }
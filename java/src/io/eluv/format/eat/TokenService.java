@@ -0,0 +1,368 @@
+package io.eluv.format.eat;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.eluv.crypto.Signer;
+
+/**
+ * TokenService issues tokens asynchronously: tokens are signed and encoded on
+ * threads dedicated to signing and delivered through a
+ * {@link CompletableFuture}, so that request threads do not stall for the
+ * cost of the signature.
+ * <p>
+ * The number of pending tokens is bounded: signing runs on a fixed number of
+ * threads and at most {@code queueCapacity} tokens wait for a thread. Tokens
+ * submitted beyond that are handled according to the {@link RejectionPolicy}.
+ * <p>
+ * On Java 21+, signing may run on virtual threads instead - see
+ * {@link Builder#withVirtualThreads(boolean)}: each token then gets its own
+ * virtual thread and the same bound applies to the number of tokens in
+ * flight.
+ * <p>
+ * A TokenService can be shared by many threads. It should be shut down when no
+ * longer used.
+ */
+public class TokenService implements AutoCloseable {
+
+    /**
+     * What to do with tokens submitted while the service is saturated.
+     */
+    public enum RejectionPolicy {
+        /**
+         * The returned future fails with a {@link TokenException} caused by a
+         * {@link RejectedExecutionException}.
+         */
+        ABORT,
+        /**
+         * The token is signed on the calling thread, which slows down
+         * submitters to the pace of the signing threads.
+         */
+        CALLER_RUNS,
+    }
+
+    private static final String THREAD_PREFIX = "elv-token-signer-";
+
+    private final Signer           mSigner;
+    private final IssuedTokenCache mCache;
+    private final RejectionPolicy  mPolicy;
+    private final ExecutorService  mExecutor;
+    private final boolean          mVirtual;
+    // bounds the tokens in flight on virtual threads; null with a thread pool
+    private final Semaphore        mPermits;
+
+    private TokenService(Builder builder) {
+        mSigner = builder.mSigner;
+        mCache = builder.mCache;
+        mPolicy = builder.mPolicy;
+
+        ExecutorService virtual = builder.mVirtualThreads ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            mExecutor = virtual;
+            mVirtual = true;
+            mPermits = new Semaphore(builder.mThreads + builder.mQueueCapacity);
+        } else {
+            mExecutor = new ThreadPoolExecutor(
+                builder.mThreads,
+                builder.mThreads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(builder.mQueueCapacity),
+                new SignerThreadFactory(),
+                new ThreadPoolExecutor.AbortPolicy());
+            mVirtual = false;
+            mPermits = null;
+        }
+    }
+
+    /**
+     * @return true if virtual threads are supported by the running JVM
+     */
+    public static boolean supportsVirtualThreads() {
+        return virtualThreadFactory() != null;
+    }
+
+    /**
+     * @return true if tokens are signed on virtual threads
+     */
+    public boolean usesVirtualThreads() {
+        return mVirtual;
+    }
+
+    /**
+     * @return the number of tokens waiting for a signing thread - always 0
+     *         with virtual threads
+     */
+    public int getQueueSize() {
+        return mExecutor instanceof ThreadPoolExecutor
+            ? ((ThreadPoolExecutor) mExecutor).getQueue().size()
+            : 0;
+    }
+
+    /**
+     * Signs and encodes the given token asynchronously.
+     * <p>
+     * The builder must not be modified until the returned future completes.
+     *
+     * @param es the token to issue
+     * @return a future of the 'bearer' string authorization, failing with a
+     *         {@link TokenException}
+     * @see TokenFactory.EditorSigned#signEncode(Signer)
+     */
+    public CompletableFuture<String> signEncode(TokenFactory.EditorSigned es) {
+        if (mCache != null) {
+            return submit(() -> mCache.signEncode(es, mSigner));
+        }
+        return submit(() -> es.signEncode(mSigner));
+    }
+
+    /**
+     * Signs and encodes a token issued now from the given template
+     * asynchronously.
+     *
+     * @param tpl     the template
+     * @param subject the subject or null to use the address of the signer
+     * @return a future of the 'bearer' string authorization, failing with a
+     *         {@link TokenException}
+     * @see EditorSignedTemplate#signEncode(Signer, String)
+     */
+    public CompletableFuture<String> signEncode(EditorSignedTemplate tpl, String subject) {
+        return submit(() -> tpl.signEncode(mSigner, subject));
+    }
+
+    private interface Issuance {
+        String issue() throws TokenException;
+    }
+
+    private CompletableFuture<String> submit(Issuance issuance) {
+        CompletableFuture<String> res = new CompletableFuture<String>();
+        if (mExecutor.isShutdown()) {
+            res.completeExceptionally(new TokenException("token service shut down"));
+            return res;
+        }
+        if (mPermits != null && !mPermits.tryAcquire()) {
+            reject(issuance, res, new RejectedExecutionException("too many tokens in flight"));
+            return res;
+        }
+        try {
+            mExecutor.execute(() -> {
+                try {
+                    complete(issuance, res);
+                } finally {
+                    if (mPermits != null) {
+                        mPermits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (mPermits != null) {
+                mPermits.release();
+            }
+            if (mExecutor.isShutdown()) {
+                res.completeExceptionally(new TokenException("token service shut down", e));
+            } else {
+                reject(issuance, res, e);
+            }
+        }
+        return res;
+    }
+
+    private void reject(Issuance issuance, CompletableFuture<String> res, RejectedExecutionException e) {
+        switch (mPolicy) {
+        case CALLER_RUNS:
+            complete(issuance, res);
+            break;
+        case ABORT:
+        default:
+            res.completeExceptionally(new TokenException("token service saturated", e));
+            break;
+        }
+    }
+
+    private static void complete(Issuance issuance, CompletableFuture<String> res) {
+        try {
+            res.complete(issuance.issue());
+        } catch (TokenException e) {
+            res.completeExceptionally(e);
+        } catch (Throwable t) {
+            // errors too: the future must not stay pending
+            res.completeExceptionally(new TokenException("token issuance failed", t));
+        }
+    }
+
+    /**
+     * Stops accepting tokens: tokens already submitted are still issued.
+     */
+    public void shutdown() {
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Waits for the tokens submitted before {@link #shutdown()} to be issued.
+     *
+     * @return true if all were issued, false if the timeout elapsed before
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Shuts down this service and waits for pending tokens to be issued.
+     */
+    @Override
+    public void close() {
+        shutdown();
+        try {
+            while (!awaitTermination(1, TimeUnit.MINUTES)) {
+                // pending tokens are bounded: keep waiting
+            }
+        } catch (InterruptedException e) {
+            mExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class SignerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, THREAD_PREFIX + mCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    // Thread.ofVirtual().name(prefix, 1).factory() - looked up reflectively to
+    // keep compiling for Java 8
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_PREFIX, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            // before Java 21
+            return null;
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        ThreadFactory factory = virtualThreadFactory();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            Method m = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) m.invoke(null, factory);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Builder of TokenService.
+     */
+    public static class Builder {
+        private final Signer     mSigner;
+        private int              mThreads       = Runtime.getRuntime().availableProcessors();
+        private int              mQueueCapacity = 1024;
+        private RejectionPolicy  mPolicy        = RejectionPolicy.ABORT;
+        private boolean          mVirtualThreads;
+        private IssuedTokenCache mCache;
+
+        /**
+         * Construct a new Builder.
+         *
+         * @param sk the signer - must be safe for concurrent use
+         */
+        public Builder(Signer sk) {
+            if (sk == null) {
+                throw new IllegalArgumentException("signer is null");
+            }
+            mSigner = sk;
+        }
+
+        /**
+         * Set the number of signing threads - by default the number of
+         * processors.
+         *
+         * @param threads the number of threads
+         * @return this Builder
+         */
+        public Builder withThreads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            mThreads = threads;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of tokens waiting for a signing thread - 1024
+         * by default.
+         *
+         * @param queueCapacity the capacity of the queue
+         * @return this Builder
+         */
+        public Builder withQueueCapacity(int queueCapacity) {
+            if (queueCapacity <= 0) {
+                throw new IllegalArgumentException("queue capacity must be positive");
+            }
+            mQueueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Set what to do with tokens submitted while the service is saturated
+         * - {@link RejectionPolicy#ABORT} by default.
+         *
+         * @param policy the rejection policy
+         * @return this Builder
+         */
+        public Builder withRejectionPolicy(RejectionPolicy policy) {
+            if (policy == null) {
+                throw new IllegalArgumentException("policy is null");
+            }
+            mPolicy = policy;
+            return this;
+        }
+
+        /**
+         * Sign on virtual threads when running on Java 21+; ignored on older
+         * versions.
+         *
+         * @param virtualThreads true to use virtual threads
+         * @return this Builder
+         */
+        public Builder withVirtualThreads(boolean virtualThreads) {
+            mVirtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Return already issued tokens from the given cache.
+         *
+         * @param cache the cache
+         * @return this Builder
+         * @see IssuedTokenCache
+         */
+        public Builder withCache(IssuedTokenCache cache) {
+            mCache = cache;
+            return this;
+        }
+
+        public TokenService build() {
+            return new TokenService(this);
+        }
+    }
+}
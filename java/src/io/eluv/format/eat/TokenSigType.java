@@ -8,6 +8,8 @@ public enum TokenSigType {
     UNSIGNED("u", "unsigned"), 
     ES256K("s", "ES256K");
 
+    private static final TokenSigType[] VALUES = values();
+
     String mPrefix;
     String mName;
 
@@ -24,4 +26,20 @@ public enum TokenSigType {
         return mName;
     }
 
+    /**
+     * Returns the TokenSigType whose prefix starts at the given offset of the string.
+     * 
+     * @param s the string
+     * @param offset the offset of the prefix in s
+     * @return the matching TokenSigType or UNKNOWN
+     */
+    static TokenSigType fromPrefix(String s, int offset) {
+        for (TokenSigType t : VALUES) {
+            if (s.startsWith(t.mPrefix, offset)) {
+                return t;
+            }
+        }
+        return UNKNOWN;
+    }
+
 }
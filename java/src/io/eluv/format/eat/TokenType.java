@@ -10,6 +10,8 @@ public enum TokenType {
     PLAIN("apl", "plain"),
     EDITOR_SIGNED("aes", "editor-signed");
 
+    private static final TokenType[] VALUES = values();
+
     String mPrefix;
     String mName;
 
@@ -26,4 +28,20 @@ public enum TokenType {
         return mName;
     }
 
+    /**
+     * Returns the TokenType whose prefix starts at the given offset of the string.
+     * 
+     * @param s the string
+     * @param offset the offset of the prefix in s
+     * @return the matching TokenType or UNKNOWN
+     */
+    static TokenType fromPrefix(String s, int offset) {
+        for (TokenType t : VALUES) {
+            if (s.startsWith(t.mPrefix, offset)) {
+                return t;
+            }
+        }
+        return UNKNOWN;
+    }
+
 }
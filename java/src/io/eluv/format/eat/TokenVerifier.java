@@ -0,0 +1,206 @@
+package io.eluv.format.eat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.function.Predicate;
+
+import io.eluv.crypto.Crypto;
+import io.eluv.crypto.Keccak256;
+import io.eluv.crypto.SignException;
+
+/**
+ * TokenVerifier decodes 'bearer' strings and verifies their type, ES256K
+ * signature and expiration.
+ * <p>
+ * The address of the signer is recovered from the signature and must match the
+ * address ({@link TokenData#EthAddr}) carried by the token. Since anyone can
+ * sign a token with their own key and address, the address must also be
+ * authorized by the caller: it is checked against the trusted signers given
+ * to the {@link Builder}, and tokens signed by any other key are rejected.
+ * <p>
+ * Tokens without expiration ({@link TokenData#Expires} zero or negative) are
+ * rejected.
+ * <p>
+ * A TokenVerifier is immutable and can be shared by many threads.
+ */
+public class TokenVerifier {
+
+    private final long               mClockSkew;
+    private final Predicate<byte[]>  mTrustedSigner;
+    private final EnumSet<TokenType> mTypes;
+
+    private TokenVerifier(Builder builder) {
+        mClockSkew = builder.mClockSkew;
+        mTrustedSigner = builder.mTrustedSigner;
+        mTypes = EnumSet.copyOf(builder.mTypes);
+    }
+
+    /**
+     * Decodes and verifies the given token at the current time.
+     *
+     * @param s the 'bearer' string
+     * @return the verified token
+     * @throws TokenException if the token is invalid, expired or not signed
+     *                        by a trusted signer
+     */
+    public Token verify(String s) throws TokenException {
+        return verify(s, System.currentTimeMillis());
+    }
+
+    /**
+     * Decodes and verifies the given token.
+     *
+     * @param s   the 'bearer' string
+     * @param now the current time (millis - UTC)
+     * @return the verified token
+     * @throws TokenException if the token is invalid, expired or not signed
+     *                        by a trusted signer
+     */
+    public Token verify(String s, long now) throws TokenException {
+        Token token = Token.decode(s);
+        if (!mTypes.contains(token.getType())) {
+            throw new TokenException("invalid token: unexpected type (" + token.getType().getName() + ")");
+        }
+        verifySignature(token);
+        verifyExpiration(token, now);
+        return token;
+    }
+
+    void verifySignature(Token token) throws TokenException {
+        if (token.getSigType() != TokenSigType.ES256K) {
+            throw new TokenException("invalid token: not signed (" + token.getSigType().getName() + ")");
+        }
+        byte[] expected = token.mTokenData.EthAddr;
+        if (expected == null || expected.length == 0) {
+            throw new TokenException("invalid token: missing address");
+        }
+
+        byte[] addr;
+        try {
+            int sigLen = Crypto.SIGNATURE_LENGTH;
+            byte[] digest = new byte[Keccak256.DIGEST_LENGTH];
+            Keccak256.hash(token.mSigned, sigLen, token.mSignedLen - sigLen, digest, 0);
+            addr = Crypto.recoverAddressFromDigest(digest, token.signature());
+        } catch (SignException e) {
+            throw new TokenException("invalid token: invalid signature", e);
+        }
+        if (!Arrays.equals(expected, addr)) {
+            throw new TokenException("invalid token: signature does not match address");
+        }
+        if (!mTrustedSigner.test(addr)) {
+            throw new TokenException("invalid token: untrusted signer");
+        }
+    }
+
+    void verifyExpiration(Token token, long now) throws TokenException {
+        if (isExpired(token.mTokenData.Expires, now)) {
+            throw new TokenException("token expired");
+        }
+    }
+
+    boolean isExpired(long expires, long now) {
+        return expires <= 0 || now - mClockSkew >= expires;
+    }
+
+    long getClockSkew() {
+        return mClockSkew;
+    }
+
+    /**
+     * Builder of TokenVerifier.
+     * <p>
+     * Trusted signers must be set: either addresses or a predicate on the
+     * recovered address.
+     */
+    public static class Builder {
+        private long               mClockSkew;
+        private Predicate<byte[]>  mTrustedSigner;
+        private EnumSet<TokenType> mTypes = EnumSet.of(TokenType.EDITOR_SIGNED);
+
+        /**
+         * Set the addresses of the trusted signers.
+         *
+         * @param addresses the addresses of the trusted signers
+         * @return this Builder
+         */
+        public Builder withTrustedSigners(Collection<byte[]> addresses) {
+            HashSet<ByteBuffer> trusted = new HashSet<ByteBuffer>();
+            for (byte[] addr : addresses) {
+                if (addr == null || addr.length == 0) {
+                    throw new IllegalArgumentException("invalid address");
+                }
+                trusted.add(ByteBuffer.wrap(addr.clone()));
+            }
+            mTrustedSigner = addr -> trusted.contains(ByteBuffer.wrap(addr));
+            return this;
+        }
+
+        /**
+         * Set the addresses of the trusted signers.
+         *
+         * @param addresses the addresses of the trusted signers
+         * @return this Builder
+         */
+        public Builder withTrustedSigners(byte[]... addresses) {
+            return withTrustedSigners(Arrays.asList(addresses));
+        }
+
+        /**
+         * Set the predicate authorizing the signer of a token, given its
+         * address.
+         *
+         * @param trustedSigner the predicate - must be safe for concurrent use
+         * @return this Builder
+         */
+        public Builder withTrustedSigner(Predicate<byte[]> trustedSigner) {
+            if (trustedSigner == null) {
+                throw new IllegalArgumentException("trusted signer predicate is required");
+            }
+            mTrustedSigner = trustedSigner;
+            return this;
+        }
+
+        /**
+         * Set the accepted token types - editor-signed by default.
+         *
+         * @param types the accepted types
+         * @return this Builder
+         */
+        public Builder withTypes(TokenType... types) {
+            if (types.length == 0) {
+                throw new IllegalArgumentException("no token type");
+            }
+            mTypes = EnumSet.copyOf(Arrays.asList(types));
+            return this;
+        }
+
+        /**
+         * Set the tolerance on the expiration of tokens - none by default.
+         *
+         * @param clockSkew the tolerance in millis
+         * @return this Builder
+         */
+        public Builder withClockSkew(long clockSkew) {
+            if (clockSkew < 0) {
+                throw new IllegalArgumentException("negative clock skew: " + clockSkew);
+            }
+            mClockSkew = clockSkew;
+            return this;
+        }
+
+        /**
+         * @return the verifier
+         * @throws IllegalStateException if no trusted signer was set
+         */
+        public TokenVerifier build() {
+            if (mTrustedSigner == null) {
+                throw new IllegalStateException("trusted signers are required");
+            }
+            return new TokenVerifier(this);
+        }
+    }
+
+}
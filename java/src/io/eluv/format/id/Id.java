@@ -3,7 +3,7 @@ package io.eluv.format.id;
 
 import org.bouncycastle.util.Arrays;
 
-import io.eluv.format.base58.Base58;
+import io.eluv.format.base58.FastBase58;
 
 /**
  * Id represents an ID in the content-fabric.
@@ -138,8 +138,11 @@ public class Id {
     
     @Override
     public String toString() {
-        return Code.values()[mBytes[0]].mPrefix 
-                + Base58.encode(Arrays.copyOfRange(mBytes, 1, mBytes.length));
+        String prefix = Code.values()[mBytes[0]].mPrefix;
+        char[] buf = new char[prefix.length() + FastBase58.maxEncodedLength(mBytes.length - 1)];
+        prefix.getChars(0, prefix.length(), buf, 0);
+        int n = FastBase58.encode(mBytes, 1, mBytes.length - 1, buf, prefix.length());
+        return new String(buf, 0, prefix.length() + n);
     }
     
     
@@ -160,11 +163,13 @@ public class Id {
             if (pref == Code.UNKNOWN) {
                 throw new IllegalArgumentException("unknown prefix (" + s.substring(0, PrefixLen) + ")");
             }
-            byte[] address;
-            try {
-                address = Base58.decode(s.substring(PrefixLen));
-            } catch (Exception e) {
-                throw new IllegalArgumentException(e);
+            byte[] address = new byte[FastBase58.maxDecodedLength(s.length() - PrefixLen)];
+            int len = FastBase58.decode(s, PrefixLen, s.length() - PrefixLen, address, 0);
+            if (len < 0) {
+                throw new IllegalArgumentException("invalid base58 ID");
+            }
+            if (len != address.length) {
+                address = java.util.Arrays.copyOf(address, len);
             }
             mPrefix = pref;
             mAddress = address;
@@ -0,0 +1,164 @@
+package io.eluv.metrics;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InProcessMetrics keeps issuance metrics in memory: a latency histogram per
+ * stage, the count of issued tokens, failures by stage and cause, and the
+ * count of native vs fallback implementations used per stage.
+ * <p>
+ * The metrics can be scraped in the Prometheus text format with
+ * {@link #scrape()}.
+ */
+public class InProcessMetrics implements IssuanceMetrics {
+
+    public static final String PREFIX = "elv_tokens_";
+
+    private final Map<Stage, LatencyHistogram> mStages   = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+    private final LongAdder                    mIssued   = new LongAdder();
+    // keyed by stage label and cause class name
+    private final ConcurrentHashMap<String, LongAdder> mFailures = new ConcurrentHashMap<String, LongAdder>();
+    private final LongAdder[][]                mPaths    = new LongAdder[Stage.values().length][2];
+
+    public InProcessMetrics() {
+        for (Stage s : Stage.values()) {
+            mStages.put(s, new LatencyHistogram());
+            mPaths[s.ordinal()][0] = new LongAdder();
+            mPaths[s.ordinal()][1] = new LongAdder();
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    public void recordStage(Stage stage, long nanos) {
+        mStages.get(stage).record(nanos);
+    }
+
+    @Override
+    public void recordIssued() {
+        mIssued.increment();
+    }
+
+    @Override
+    public void recordFailure(Stage stage, Throwable cause) {
+        String key = stage.label() + "|" + (cause != null ? cause.getClass().getName() : "unknown");
+        LongAdder a = mFailures.get(key);
+        if (a == null) {
+            a = mFailures.computeIfAbsent(key, k -> new LongAdder());
+        }
+        a.increment();
+    }
+
+    @Override
+    public void recordPath(Stage stage, boolean nativePath) {
+        mPaths[stage.ordinal()][nativePath ? 1 : 0].increment();
+    }
+
+    public LatencyHistogram stage(Stage stage) {
+        return mStages.get(stage);
+    }
+
+    public long issued() {
+        return mIssued.sum();
+    }
+
+    /**
+     * @return the count of failures of the given stage - all causes
+     */
+    public long failures(Stage stage) {
+        String prefix = stage.label() + "|";
+        long count = 0;
+        for (Map.Entry<String, LongAdder> e : mFailures.entrySet()) {
+            if (e.getKey().startsWith(prefix)) {
+                count += e.getValue().sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of times the given stage used the native library -
+     *         or the pure java fallback
+     */
+    public long paths(Stage stage, boolean nativePath) {
+        return mPaths[stage.ordinal()][nativePath ? 1 : 0].sum();
+    }
+
+    /**
+     * @return the metrics in the Prometheus text exposition format
+     */
+    public String scrape() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writeTo(sb);
+        } catch (IOException e) {
+            // not thrown by StringBuilder
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format.
+     *
+     * @param out the output
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Appendable out) throws IOException {
+        String name = PREFIX + "stage_seconds";
+        out.append("# TYPE ").append(name).append(" histogram\n");
+        for (Stage s : Stage.values()) {
+            LatencyHistogram h = mStages.get(s);
+            long[] counts = h.bucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                long bound = LatencyHistogram.bucketUpperBound(i);
+                String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / 1e9);
+                out.append(name).append("_bucket{stage=\"").append(s.label())
+                    .append("\",le=\"").append(le).append("\"} ")
+                    .append(Long.toString(cumulative)).append('\n');
+            }
+            out.append(name).append("_sum{stage=\"").append(s.label()).append("\"} ")
+                .append(Double.toString(h.sumNanos() / 1e9)).append('\n');
+            out.append(name).append("_count{stage=\"").append(s.label()).append("\"} ")
+                .append(Long.toString(cumulative)).append('\n');
+        }
+
+        name = PREFIX + "issued_total";
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(Long.toString(issued())).append('\n');
+
+        name = PREFIX + "failures_total";
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, LongAdder> e : mFailures.entrySet()) {
+            int sep = e.getKey().indexOf('|');
+            out.append(name).append("{stage=\"").append(e.getKey(), 0, sep)
+                .append("\",cause=\"").append(e.getKey(), sep + 1, e.getKey().length())
+                .append("\"} ").append(Long.toString(e.getValue().sum())).append('\n');
+        }
+
+        name = PREFIX + "path_total";
+        out.append("# TYPE ").append(name).append(" counter\n");
+        for (Stage s : Stage.values()) {
+            for (int p = 0; p < 2; p++) {
+                long count = mPaths[s.ordinal()][p].sum();
+                if (count == 0) {
+                    continue;
+                }
+                out.append(name).append("{stage=\"").append(s.label())
+                    .append("\",path=\"").append(p == 1 ? "native" : "fallback")
+                    .append("\"} ").append(Long.toString(count)).append('\n');
+            }
+        }
+    }
+
+}
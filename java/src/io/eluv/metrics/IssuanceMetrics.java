@@ -0,0 +1,76 @@
+package io.eluv.metrics;
+
+/**
+ * IssuanceMetrics receives the timings and counters of the token issuance hot
+ * path.
+ * <p>
+ * Implementations are installed with {@link Metrics#install(IssuanceMetrics)}
+ * and called concurrently from all issuing threads: they must be thread-safe
+ * and cheap. Timings are only taken when {@link #isEnabled()} returns true.
+ */
+public interface IssuanceMetrics {
+
+    /**
+     * The stages of token issuance.
+     * <p>
+     * Token bytes are hashed as they are serialized or compressed: most of
+     * the hashing time is part of SERIALIZE, or COMPRESS for compressed
+     * formats. HASH only times the end of hashing - the last block and the
+     * digest.
+     */
+    public static enum Stage {
+        SERIALIZE("serialize"), // token data to JSON
+        COMPRESS("compress"),   // deflate of compressed formats
+        HASH("hash"),           // end of the keccak-256 of the token bytes - see below
+        SIGN("sign"),           // EC signature of the hash
+        ENCODE("encode");       // base58 encoding of signature and token bytes
+
+        private final String mLabel;
+
+        Stage(String label) {
+            mLabel = label;
+        }
+
+        /** lower case name - suitable as a metric label, whatever the locale */
+        public String label() {
+            return mLabel;
+        }
+    }
+
+    /**
+     * @return true if timings should be taken and reported - false for the
+     *         no-op implementation
+     */
+    boolean isEnabled();
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param stage the stage
+     * @param nanos the duration in nanoseconds
+     */
+    void recordStage(Stage stage, long nanos);
+
+    /**
+     * Records a token successfully signed and encoded.
+     */
+    void recordIssued();
+
+    /**
+     * Records a failure of a stage.
+     *
+     * @param stage the stage that failed
+     * @param cause the cause of the failure
+     */
+    void recordFailure(Stage stage, Throwable cause);
+
+    /**
+     * Records which implementation a stage used.
+     *
+     * @param stage      the stage
+     * @param nativePath true if the native library was used, false for the
+     *                   pure java fallback
+     */
+    void recordPath(Stage stage, boolean nativePath);
+
+}
@@ -0,0 +1,111 @@
+package io.eluv.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram is a lock-free histogram of durations in nanoseconds with
+ * power of two buckets.
+ * <p>
+ * Bucket {@code i} counts durations lower than or equal to
+ * {@link #bucketUpperBound(int) 2^(i + MIN_SHIFT)} nanoseconds - from about
+ * 1 microsecond to about 1 minute - and the last bucket counts all longer
+ * durations.
+ */
+public class LatencyHistogram {
+
+    static final int MIN_SHIFT = 10;
+    public static final int BUCKETS = 27;
+
+    private final LongAdder[]     mBuckets = new LongAdder[BUCKETS];
+    private final LongAdder       mSum     = new LongAdder();
+    private final LongAccumulator mMax     = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param i the index of a bucket
+     * @return the inclusive upper bound in nanoseconds of the bucket - or
+     *         Long.MAX_VALUE for the last one
+     */
+    public static long bucketUpperBound(int i) {
+        return i == BUCKETS - 1 ? Long.MAX_VALUE : 1L << (i + MIN_SHIFT);
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos <= 1L << MIN_SHIFT) {
+            return 0;
+        }
+        // smallest i such that nanos <= 2^(i + MIN_SHIFT)
+        int i = 64 - Long.numberOfLeadingZeros(nanos - 1) - MIN_SHIFT;
+        return Math.min(i, BUCKETS - 1);
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        mBuckets[bucketIndex(nanos)].increment();
+        mSum.add(nanos);
+        mMax.accumulate(nanos);
+    }
+
+    public long count() {
+        long count = 0;
+        for (LongAdder b : mBuckets) {
+            count += b.sum();
+        }
+        return count;
+    }
+
+    public long sumNanos() {
+        return mSum.sum();
+    }
+
+    public long maxNanos() {
+        return mMax.get();
+    }
+
+    /**
+     * @return the count of each bucket - not cumulative
+     */
+    public long[] bucketCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mBuckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile: the upper bound of the
+     * bucket holding it, capped by the maximum recorded value.
+     *
+     * @param p the percentile, between 0 and 100
+     * @return the percentile in nanoseconds or 0 if nothing was recorded
+     */
+    public long percentileNanos(double p) {
+        long[] counts = bucketCounts();
+        long total = 0;
+        for (long c : counts) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * p / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos());
+            }
+        }
+        return maxNanos();
+    }
+
+}
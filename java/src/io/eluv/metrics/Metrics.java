@@ -0,0 +1,85 @@
+package io.eluv.metrics;
+
+/**
+ * Metrics holds the {@link IssuanceMetrics} reported to by the library.
+ * <p>
+ * Nothing is recorded by default: the no-op implementation is used until
+ * another one is installed, for instance an {@link InProcessMetrics}.
+ */
+public final class Metrics {
+
+    public static final IssuanceMetrics NOOP = new IssuanceMetrics() {
+
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void recordStage(Stage stage, long nanos) {
+        }
+
+        @Override
+        public void recordIssued() {
+        }
+
+        @Override
+        public void recordFailure(Stage stage, Throwable cause) {
+        }
+
+        @Override
+        public void recordPath(Stage stage, boolean nativePath) {
+        }
+    };
+
+    private static volatile IssuanceMetrics current = NOOP;
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the installed metrics - never null
+     */
+    public static IssuanceMetrics get() {
+        return current;
+    }
+
+    /**
+     * Installs the given metrics, replacing the current ones.
+     *
+     * @param metrics the metrics to install or null to restore the no-op
+     *                implementation
+     */
+    public static void install(IssuanceMetrics metrics) {
+        current = metrics != null ? metrics : NOOP;
+    }
+
+    /**
+     * @param metrics the metrics
+     * @return the current time in nanoseconds if metrics are enabled, 0
+     *         otherwise
+     */
+    public static long start(IssuanceMetrics metrics) {
+        return metrics.isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Records the duration of the given stage started at the given time - if
+     * metrics are enabled.
+     *
+     * @param metrics the metrics
+     * @param stage   the stage
+     * @param start   the start time as returned by {@link #start(IssuanceMetrics)}
+     * @return the current time in nanoseconds - the start of a following
+     *         stage - or 0 if metrics are disabled
+     */
+    public static long stop(IssuanceMetrics metrics, IssuanceMetrics.Stage stage, long start) {
+        if (!metrics.isEnabled()) {
+            return 0L;
+        }
+        long now = System.nanoTime();
+        metrics.recordStage(stage, now - start);
+        return now;
+    }
+
+}
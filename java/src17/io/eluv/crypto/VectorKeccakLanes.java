@@ -0,0 +1,172 @@
+package io.eluv.crypto;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorKeccakLanes permutes as many Keccak states as the preferred vector
+ * species has 64 bits lanes - 8 with AVX-512 - with the state words held in
+ * vector registers.
+ * <p>
+ * Compiled for JDK 17+ into the multi-release part of the jar; only loaded -
+ * reflectively, by {@link KeccakLanes} - when {@code jdk.incubator.vector} is
+ * added to the boot layer.
+ */
+final class VectorKeccakLanes extends KeccakLanes {
+
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+    // narrower vectors do not beat the scalar permutation
+    private static final int MIN_LANES = 4;
+
+    VectorKeccakLanes() {
+        if (SPECIES.length() < MIN_LANES) {
+            throw new UnsupportedOperationException("vector lanes: " + SPECIES.length());
+        }
+    }
+
+    @Override
+    int lanes() {
+        return SPECIES.length();
+    }
+
+    @Override
+    public String toString() {
+        return "vector " + SPECIES;
+    }
+
+    @Override
+    void permute(long[] s) {
+        int n = SPECIES.length();
+        LongVector a00 = LongVector.fromArray(SPECIES, s, 0 * n);
+        LongVector a01 = LongVector.fromArray(SPECIES, s, 1 * n);
+        LongVector a02 = LongVector.fromArray(SPECIES, s, 2 * n);
+        LongVector a03 = LongVector.fromArray(SPECIES, s, 3 * n);
+        LongVector a04 = LongVector.fromArray(SPECIES, s, 4 * n);
+        LongVector a05 = LongVector.fromArray(SPECIES, s, 5 * n);
+        LongVector a06 = LongVector.fromArray(SPECIES, s, 6 * n);
+        LongVector a07 = LongVector.fromArray(SPECIES, s, 7 * n);
+        LongVector a08 = LongVector.fromArray(SPECIES, s, 8 * n);
+        LongVector a09 = LongVector.fromArray(SPECIES, s, 9 * n);
+        LongVector a10 = LongVector.fromArray(SPECIES, s, 10 * n);
+        LongVector a11 = LongVector.fromArray(SPECIES, s, 11 * n);
+        LongVector a12 = LongVector.fromArray(SPECIES, s, 12 * n);
+        LongVector a13 = LongVector.fromArray(SPECIES, s, 13 * n);
+        LongVector a14 = LongVector.fromArray(SPECIES, s, 14 * n);
+        LongVector a15 = LongVector.fromArray(SPECIES, s, 15 * n);
+        LongVector a16 = LongVector.fromArray(SPECIES, s, 16 * n);
+        LongVector a17 = LongVector.fromArray(SPECIES, s, 17 * n);
+        LongVector a18 = LongVector.fromArray(SPECIES, s, 18 * n);
+        LongVector a19 = LongVector.fromArray(SPECIES, s, 19 * n);
+        LongVector a20 = LongVector.fromArray(SPECIES, s, 20 * n);
+        LongVector a21 = LongVector.fromArray(SPECIES, s, 21 * n);
+        LongVector a22 = LongVector.fromArray(SPECIES, s, 22 * n);
+        LongVector a23 = LongVector.fromArray(SPECIES, s, 23 * n);
+        LongVector a24 = LongVector.fromArray(SPECIES, s, 24 * n);
+
+        for (int i = 0; i < 24; i++) {
+            // theta
+            LongVector c0 = a00.lanewise(VectorOperators.XOR, a05).lanewise(VectorOperators.XOR, a10).lanewise(VectorOperators.XOR, a15).lanewise(VectorOperators.XOR, a20);
+            LongVector c1 = a01.lanewise(VectorOperators.XOR, a06).lanewise(VectorOperators.XOR, a11).lanewise(VectorOperators.XOR, a16).lanewise(VectorOperators.XOR, a21);
+            LongVector c2 = a02.lanewise(VectorOperators.XOR, a07).lanewise(VectorOperators.XOR, a12).lanewise(VectorOperators.XOR, a17).lanewise(VectorOperators.XOR, a22);
+            LongVector c3 = a03.lanewise(VectorOperators.XOR, a08).lanewise(VectorOperators.XOR, a13).lanewise(VectorOperators.XOR, a18).lanewise(VectorOperators.XOR, a23);
+            LongVector c4 = a04.lanewise(VectorOperators.XOR, a09).lanewise(VectorOperators.XOR, a14).lanewise(VectorOperators.XOR, a19).lanewise(VectorOperators.XOR, a24);
+
+            LongVector d1 = c2.lanewise(VectorOperators.ROL, 1).lanewise(VectorOperators.XOR, c0);
+            LongVector d2 = c3.lanewise(VectorOperators.ROL, 1).lanewise(VectorOperators.XOR, c1);
+            LongVector d3 = c4.lanewise(VectorOperators.ROL, 1).lanewise(VectorOperators.XOR, c2);
+            LongVector d4 = c0.lanewise(VectorOperators.ROL, 1).lanewise(VectorOperators.XOR, c3);
+            LongVector d0 = c1.lanewise(VectorOperators.ROL, 1).lanewise(VectorOperators.XOR, c4);
+
+            a00 = a00.lanewise(VectorOperators.XOR, d0); a05 = a05.lanewise(VectorOperators.XOR, d0); a10 = a10.lanewise(VectorOperators.XOR, d0); a15 = a15.lanewise(VectorOperators.XOR, d0); a20 = a20.lanewise(VectorOperators.XOR, d0);
+            a01 = a01.lanewise(VectorOperators.XOR, d1); a06 = a06.lanewise(VectorOperators.XOR, d1); a11 = a11.lanewise(VectorOperators.XOR, d1); a16 = a16.lanewise(VectorOperators.XOR, d1); a21 = a21.lanewise(VectorOperators.XOR, d1);
+            a02 = a02.lanewise(VectorOperators.XOR, d2); a07 = a07.lanewise(VectorOperators.XOR, d2); a12 = a12.lanewise(VectorOperators.XOR, d2); a17 = a17.lanewise(VectorOperators.XOR, d2); a22 = a22.lanewise(VectorOperators.XOR, d2);
+            a03 = a03.lanewise(VectorOperators.XOR, d3); a08 = a08.lanewise(VectorOperators.XOR, d3); a13 = a13.lanewise(VectorOperators.XOR, d3); a18 = a18.lanewise(VectorOperators.XOR, d3); a23 = a23.lanewise(VectorOperators.XOR, d3);
+            a04 = a04.lanewise(VectorOperators.XOR, d4); a09 = a09.lanewise(VectorOperators.XOR, d4); a14 = a14.lanewise(VectorOperators.XOR, d4); a19 = a19.lanewise(VectorOperators.XOR, d4); a24 = a24.lanewise(VectorOperators.XOR, d4);
+
+            // rho and pi
+            LongVector b00 = a00;
+            LongVector b16 = a05.lanewise(VectorOperators.ROL, 36);
+            LongVector b07 = a10.lanewise(VectorOperators.ROL, 3);
+            LongVector b23 = a15.lanewise(VectorOperators.ROL, 41);
+            LongVector b14 = a20.lanewise(VectorOperators.ROL, 18);
+            LongVector b10 = a01.lanewise(VectorOperators.ROL, 1);
+            LongVector b01 = a06.lanewise(VectorOperators.ROL, 44);
+            LongVector b17 = a11.lanewise(VectorOperators.ROL, 10);
+            LongVector b08 = a16.lanewise(VectorOperators.ROL, 45);
+            LongVector b24 = a21.lanewise(VectorOperators.ROL, 2);
+            LongVector b20 = a02.lanewise(VectorOperators.ROL, 62);
+            LongVector b11 = a07.lanewise(VectorOperators.ROL, 6);
+            LongVector b02 = a12.lanewise(VectorOperators.ROL, 43);
+            LongVector b18 = a17.lanewise(VectorOperators.ROL, 15);
+            LongVector b09 = a22.lanewise(VectorOperators.ROL, 61);
+            LongVector b05 = a03.lanewise(VectorOperators.ROL, 28);
+            LongVector b21 = a08.lanewise(VectorOperators.ROL, 55);
+            LongVector b12 = a13.lanewise(VectorOperators.ROL, 25);
+            LongVector b03 = a18.lanewise(VectorOperators.ROL, 21);
+            LongVector b19 = a23.lanewise(VectorOperators.ROL, 56);
+            LongVector b15 = a04.lanewise(VectorOperators.ROL, 27);
+            LongVector b06 = a09.lanewise(VectorOperators.ROL, 20);
+            LongVector b22 = a14.lanewise(VectorOperators.ROL, 39);
+            LongVector b13 = a19.lanewise(VectorOperators.ROL, 8);
+            LongVector b04 = a24.lanewise(VectorOperators.ROL, 14);
+
+            // chi
+            a00 = b00.lanewise(VectorOperators.XOR, b01.not().and(b02));
+            a01 = b01.lanewise(VectorOperators.XOR, b02.not().and(b03));
+            a02 = b02.lanewise(VectorOperators.XOR, b03.not().and(b04));
+            a03 = b03.lanewise(VectorOperators.XOR, b04.not().and(b00));
+            a04 = b04.lanewise(VectorOperators.XOR, b00.not().and(b01));
+            a05 = b05.lanewise(VectorOperators.XOR, b06.not().and(b07));
+            a06 = b06.lanewise(VectorOperators.XOR, b07.not().and(b08));
+            a07 = b07.lanewise(VectorOperators.XOR, b08.not().and(b09));
+            a08 = b08.lanewise(VectorOperators.XOR, b09.not().and(b05));
+            a09 = b09.lanewise(VectorOperators.XOR, b05.not().and(b06));
+            a10 = b10.lanewise(VectorOperators.XOR, b11.not().and(b12));
+            a11 = b11.lanewise(VectorOperators.XOR, b12.not().and(b13));
+            a12 = b12.lanewise(VectorOperators.XOR, b13.not().and(b14));
+            a13 = b13.lanewise(VectorOperators.XOR, b14.not().and(b10));
+            a14 = b14.lanewise(VectorOperators.XOR, b10.not().and(b11));
+            a15 = b15.lanewise(VectorOperators.XOR, b16.not().and(b17));
+            a16 = b16.lanewise(VectorOperators.XOR, b17.not().and(b18));
+            a17 = b17.lanewise(VectorOperators.XOR, b18.not().and(b19));
+            a18 = b18.lanewise(VectorOperators.XOR, b19.not().and(b15));
+            a19 = b19.lanewise(VectorOperators.XOR, b15.not().and(b16));
+            a20 = b20.lanewise(VectorOperators.XOR, b21.not().and(b22));
+            a21 = b21.lanewise(VectorOperators.XOR, b22.not().and(b23));
+            a22 = b22.lanewise(VectorOperators.XOR, b23.not().and(b24));
+            a23 = b23.lanewise(VectorOperators.XOR, b24.not().and(b20));
+            a24 = b24.lanewise(VectorOperators.XOR, b20.not().and(b21));
+
+            // iota
+            a00 = a00.lanewise(VectorOperators.XOR, Keccak256.RC[i]);
+        }
+
+        a00.intoArray(s, 0 * n);
+        a01.intoArray(s, 1 * n);
+        a02.intoArray(s, 2 * n);
+        a03.intoArray(s, 3 * n);
+        a04.intoArray(s, 4 * n);
+        a05.intoArray(s, 5 * n);
+        a06.intoArray(s, 6 * n);
+        a07.intoArray(s, 7 * n);
+        a08.intoArray(s, 8 * n);
+        a09.intoArray(s, 9 * n);
+        a10.intoArray(s, 10 * n);
+        a11.intoArray(s, 11 * n);
+        a12.intoArray(s, 12 * n);
+        a13.intoArray(s, 13 * n);
+        a14.intoArray(s, 14 * n);
+        a15.intoArray(s, 15 * n);
+        a16.intoArray(s, 16 * n);
+        a17.intoArray(s, 17 * n);
+        a18.intoArray(s, 18 * n);
+        a19.intoArray(s, 19 * n);
+        a20.intoArray(s, 20 * n);
+        a21.intoArray(s, 21 * n);
+        a22.intoArray(s, 22 * n);
+        a23.intoArray(s, 23 * n);
+        a24.intoArray(s, 24 * n);
+    }
+
+}
@@ -0,0 +1,241 @@
+package io.eluv.crypto;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class BatchingSignerTest {
+
+    static final String KEY_ID = "ikms_test";
+
+    static byte[] digest(Random rnd) {
+        byte[] d = new byte[32];
+        rnd.nextBytes(d);
+        return d;
+    }
+
+    static void assertSignedBy(byte[] address, byte[] digest, byte[] sig) throws Exception {
+        assertArrayEquals(address, Crypto.recoverAddressFromDigest(digest, sig));
+    }
+
+    @Test
+    void testBatches() throws Exception {
+        Random rnd = new Random(25);
+        try (LocalKms kms = new LocalKms(5, TimeUnit.MILLISECONDS).withKey(KEY_ID, KeysTest.STATIC_PK)) {
+            BatchingSigner signer = new BatchingSigner.Builder(kms, KEY_ID)
+                .withMaxBatchSize(16)
+                .withMaxDelay(5, TimeUnit.MILLISECONDS)
+                .build();
+            assertArrayEquals(new FastPrivateKey(KeysTest.STATIC_PK).getAddress(), signer.getAddress());
+
+            List<byte[]> digests = new ArrayList<>();
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                digests.add(digest(rnd));
+                futures.add(signer.signAsync(digests.get(i)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertSignedBy(signer.getAddress(), digests.get(i), futures.get(i).get(10, TimeUnit.SECONDS));
+            }
+            // same signatures as the key itself
+            assertArrayEquals(new FastPrivateKey(KeysTest.STATIC_PK).sign(digests.get(0)), futures.get(0).get());
+
+            assertEquals(100, kms.getSignatureCount());
+            assertEquals(kms.getRequestCount(), signer.getBatchCount());
+            assertTrue(kms.getRequestCount() >= 7 && kms.getRequestCount() < 20, "requests " + kms.getRequestCount());
+
+            // blocking
+            byte[] d = digest(rnd);
+            assertSignedBy(signer.getAddress(), d, signer.sign(d));
+            signer.close();
+        }
+    }
+
+    @Test
+    void testMaxDelay() throws Exception {
+        Random rnd = new Random(26);
+        try (LocalKms kms = new LocalKms(0, TimeUnit.MILLISECONDS).withKey(KEY_ID, KeysTest.STATIC_PK)) {
+            // a full batch is sent right away
+            BatchingSigner signer = new BatchingSigner.Builder(kms, KEY_ID)
+                .withMaxBatchSize(4)
+                .withMaxDelay(1, TimeUnit.HOURS)
+                .build();
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(signer.signAsync(digest(rnd)));
+            }
+            for (CompletableFuture<byte[]> f : futures) {
+                assertNotNull(f.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, kms.getRequestCount());
+
+            // an incomplete one waits
+            CompletableFuture<byte[]> waiting = signer.signAsync(digest(rnd));
+            Thread.sleep(50);
+            assertFalse(waiting.isDone());
+            // until closed
+            signer.close();
+            assertNotNull(waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(2, kms.getRequestCount());
+            assertThrows(ExecutionException.class, () -> signer.signAsync(digest(rnd)).get());
+
+            // or after the delay
+            BatchingSigner windowed = new BatchingSigner.Builder(kms, KEY_ID)
+                .withMaxBatchSize(100)
+                .withMaxDelay(20, TimeUnit.MILLISECONDS)
+                .build();
+            futures.clear();
+            long start = System.nanoTime();
+            for (int i = 0; i < 3; i++) {
+                futures.add(windowed.signAsync(digest(rnd)));
+            }
+            for (CompletableFuture<byte[]> f : futures) {
+                assertNotNull(f.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20));
+            assertEquals(3, kms.getRequestCount());
+            windowed.close();
+        }
+    }
+
+    @Test
+    void testInFlight() throws Exception {
+        Random rnd = new Random(27);
+        try (LocalKms kms = new LocalKms(100, TimeUnit.MILLISECONDS).withKey(KEY_ID, KeysTest.STATIC_PK)) {
+            BatchingSigner signer = new BatchingSigner.Builder(kms, KEY_ID)
+                .withMaxBatchSize(2)
+                .withMaxDelay(1, TimeUnit.MILLISECONDS)
+                .withMaxInFlight(2)
+                .build();
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                futures.add(signer.signAsync(digest(rnd)));
+            }
+            assertEquals(2, signer.getInFlight());
+            for (CompletableFuture<byte[]> f : futures) {
+                assertNotNull(f.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(2, kms.getMaxConcurrentRequests());
+            assertEquals(5, kms.getRequestCount());
+            assertEquals(0, signer.getInFlight());
+            signer.close();
+        }
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        Random rnd = new Random(28);
+        try (LocalKms kms = new LocalKms(1, TimeUnit.MILLISECONDS).withKey(KEY_ID, KeysTest.STATIC_PK)) {
+            assertThrows(SignException.class, () -> new BatchingSigner.Builder(kms, "unknown").build());
+
+            BatchingSigner signer = new BatchingSigner.Builder(kms, KEY_ID).build();
+            assertThrows(SignException.class, () -> signer.sign(new byte[31]));
+
+            // a KMS returning the wrong number of signatures
+            Kms broken = new Kms() {
+                @Override
+                public byte[] getAddress(String keyId) throws SignException {
+                    return kms.getAddress(keyId);
+                }
+
+                @Override
+                public CompletableFuture<byte[][]> signBatch(String keyId, byte[][] digests) {
+                    return CompletableFuture.completedFuture(new byte[0][]);
+                }
+            };
+            BatchingSigner failing = new BatchingSigner.Builder(broken, KEY_ID)
+                .withTimeout(10, TimeUnit.SECONDS)
+                .build();
+            SignException e = assertThrows(SignException.class, () -> failing.sign(digest(rnd)));
+            assertTrue(e.getMessage().contains("signatures"), e.getMessage());
+            signer.close();
+            failing.close();
+        }
+    }
+
+    @Test
+    void testConcurrentSign() throws Exception {
+        // blocking signs from many threads share batches
+        try (LocalKms kms = new LocalKms(10, TimeUnit.MILLISECONDS).withKey(KEY_ID, KeysTest.STATIC_PK)) {
+            BatchingSigner signer = new BatchingSigner.Builder(kms, KEY_ID)
+                .withMaxDelay(5, TimeUnit.MILLISECONDS)
+                .build();
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                Random rnd = new Random(t);
+                Thread th = new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 10; i++) {
+                            byte[] d = digest(rnd);
+                            assertSignedBy(signer.getAddress(), d, signer.sign(d));
+                        }
+                    } catch (Throwable ex) {
+                        synchronized (errors) {
+                            errors.add(ex);
+                        }
+                    }
+                });
+                threads.add(th);
+                th.start();
+            }
+            for (Thread th : threads) {
+                th.join();
+            }
+            assertTrue(errors.isEmpty(), "" + errors);
+            assertEquals(160, kms.getSignatureCount());
+            assertTrue(kms.getRequestCount() < 160, "requests " + kms.getRequestCount());
+            signer.close();
+        }
+    }
+
+    @Test
+    void testKmsTimeout() throws Exception {
+        Random rnd = new Random(29);
+        try (LocalKms kms = new LocalKms(0, TimeUnit.MILLISECONDS).withKey(KEY_ID, KeysTest.STATIC_PK)) {
+            // never answers the first two requests
+            AtomicInteger requests = new AtomicInteger();
+            Kms hanging = new Kms() {
+                @Override
+                public byte[] getAddress(String keyId) throws SignException {
+                    return kms.getAddress(keyId);
+                }
+
+                @Override
+                public CompletableFuture<byte[][]> signBatch(String keyId, byte[][] digests) {
+                    if (requests.incrementAndGet() <= 2) {
+                        return new CompletableFuture<byte[][]>();
+                    }
+                    return kms.signBatch(keyId, digests);
+                }
+            };
+            BatchingSigner signer = new BatchingSigner.Builder(hanging, KEY_ID)
+                .withMaxBatchSize(1)
+                .withMaxInFlight(1)
+                .withTimeout(100, TimeUnit.MILLISECONDS)
+                .build();
+
+            CompletableFuture<byte[]> lost = signer.signAsync(digest(rnd));
+            SignException e = assertThrows(SignException.class, () -> signer.sign(digest(rnd)));
+            assertTrue(e.getMessage().contains("timed out"), e.getMessage());
+            ExecutionException ee = assertThrows(ExecutionException.class, () -> lost.get(10, TimeUnit.SECONDS));
+            assertTrue(ee.getCause() instanceof SignException, "" + ee.getCause());
+
+            // the requests that timed out freed their place in flight
+            byte[] d = digest(rnd);
+            assertSignedBy(signer.getAddress(), d, signer.signAsync(d).get(10, TimeUnit.SECONDS));
+            assertEquals(3, requests.get());
+            assertEquals(0, signer.getInFlight());
+            signer.close();
+        }
+    }
+
+}
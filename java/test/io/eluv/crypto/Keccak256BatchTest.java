@@ -0,0 +1,172 @@
+package io.eluv.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.Hash;
+
+class Keccak256BatchTest {
+
+    static List<KeccakLanes> implementations() {
+        List<KeccakLanes> res = new ArrayList<KeccakLanes>();
+        res.add(KeccakLanes.SCALAR);
+        if (KeccakLanes.vector() != null) {
+            res.add(KeccakLanes.vector());
+        }
+        return res;
+    }
+
+    static byte[][] messages(Random rnd, int count) {
+        byte[][] res = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            // lengths around one and two blocks, and random ones
+            int len = i % 3 == 0
+                ? Keccak256.RATE * (1 + rnd.nextInt(2)) + rnd.nextInt(5) - 2
+                : rnd.nextInt(700);
+            res[i] = new byte[len];
+            rnd.nextBytes(res[i]);
+        }
+        return res;
+    }
+
+    @Test
+    void testSameAsWeb3j() {
+        Random rnd = new Random(23);
+        for (KeccakLanes lanes : implementations()) {
+            Keccak256Batch batch = new Keccak256Batch(lanes);
+            for (int count : new int[] { 0, 1, 3, 8, 9, 64, 100 }) {
+                byte[][] inputs = messages(rnd, count);
+                int[] offsets = new int[count];
+                int[] lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    lengths[i] = inputs[i].length;
+                }
+                byte[] out = new byte[count * Keccak256.DIGEST_LENGTH];
+                batch.run(inputs, offsets, lengths, out, 0);
+                for (int i = 0; i < count; i++) {
+                    assertArrayEquals(Hash.sha3(inputs[i]),
+                        Arrays.copyOfRange(out, i * 32, i * 32 + 32), lanes + " len " + inputs[i].length);
+                }
+            }
+        }
+
+        byte[][] inputs = messages(rnd, 20);
+        byte[][] res = Keccak256Batch.hash(inputs);
+        assertEquals(inputs.length, res.length);
+        for (int i = 0; i < inputs.length; i++) {
+            assertArrayEquals(Hash.sha3(inputs[i]), res[i]);
+        }
+    }
+
+    @Test
+    void testRanges() {
+        Random rnd = new Random(24);
+        byte[][] inputs = messages(rnd, 30);
+        int[] offsets = new int[inputs.length];
+        int[] lengths = new int[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            int n = inputs[i].length;
+            offsets[i] = n == 0 ? 0 : rnd.nextInt(n);
+            lengths[i] = rnd.nextInt(n - offsets[i] + 1);
+        }
+        byte[] out = new byte[inputs.length * 32 + 7];
+        Keccak256Batch.hash(inputs, offsets, lengths, out, 7);
+        for (int i = 0; i < inputs.length; i++) {
+            byte[] expected = Hash.sha3(Arrays.copyOfRange(inputs[i], offsets[i], offsets[i] + lengths[i]));
+            assertArrayEquals(expected, Arrays.copyOfRange(out, 7 + i * 32, 7 + i * 32 + 32));
+        }
+
+        assertThrows(IndexOutOfBoundsException.class,
+            () -> Keccak256Batch.hash(inputs, offsets, lengths, new byte[inputs.length * 32], 1));
+        assertThrows(IllegalArgumentException.class,
+            () -> Keccak256Batch.hash(inputs, new int[1], lengths, out, 0));
+        int[] bad = lengths.clone();
+        bad[3] = inputs[3].length + 1;
+        assertThrows(IndexOutOfBoundsException.class,
+            () -> Keccak256Batch.hash(inputs, offsets, bad, out, 0));
+    }
+
+    @Test
+    void testVectorLanes() throws Exception {
+        // covered by the tests above when running with the vector module
+        assumeTrue(KeccakLanes.vector() == null, "vector lanes already tested");
+        String spec = System.getProperty("java.specification.version");
+        assumeTrue(!spec.startsWith("1.") && Integer.parseInt(spec) >= 17, "java " + spec);
+        File classes = new File(KeccakLanes.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        File versioned = new File(classes, "META-INF/versions/17");
+        assumeTrue(versioned.isDirectory(), "no java 17 classes in " + classes);
+        File tests = new File(VectorCheck.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+
+        // run VectorCheck in a JVM with the module and the versioned classes
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String cp = versioned + File.pathSeparator + classes + File.pathSeparator + tests;
+        Process p = new ProcessBuilder(java, "--add-modules", "jdk.incubator.vector",
+            "-cp", cp, VectorCheck.class.getName())
+            .redirectErrorStream(true)
+            .start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = p.getInputStream()) {
+            byte[] buf = new byte[1024];
+            for (int n; (n = in.read(buf)) > 0;) {
+                out.write(buf, 0, n);
+            }
+        }
+        assertTrue(p.waitFor(60, TimeUnit.SECONDS), "timed out");
+        String output = out.toString("UTF-8");
+        assumeTrue(p.exitValue() != VectorCheck.UNAVAILABLE, output);
+        assertEquals(0, p.exitValue(), output);
+    }
+
+    /**
+     * Compares the vector lanes with {@link Keccak256} - run in a separate
+     * JVM by {@link Keccak256BatchTest#testVectorLanes()}.
+     */
+    static class VectorCheck {
+        static final int UNAVAILABLE = 2;
+
+        public static void main(String[] args) {
+            KeccakLanes lanes = KeccakLanes.vector();
+            if (lanes == null) {
+                System.out.println("vector lanes not available");
+                System.exit(UNAVAILABLE);
+            }
+            Random rnd = new Random(25);
+            Keccak256Batch batch = new Keccak256Batch(lanes);
+            for (int count : new int[] { 1, 3, 8, 9, 64, 100 }) {
+                byte[][] inputs = new byte[count][];
+                int[] offsets = new int[count];
+                int[] lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    inputs[i] = new byte[i % 3 == 0 ? Keccak256.RATE * (1 + i % 2) + i % 5 - 2 : rnd.nextInt(700)];
+                    rnd.nextBytes(inputs[i]);
+                    lengths[i] = inputs[i].length;
+                }
+                byte[] out = new byte[count * Keccak256.DIGEST_LENGTH];
+                batch.run(inputs, offsets, lengths, out, 0);
+                for (int i = 0; i < count; i++) {
+                    byte[] expected = Keccak256.hash(inputs[i]);
+                    byte[] actual = Arrays.copyOfRange(out, i * 32, i * 32 + 32);
+                    if (!Arrays.equals(expected, actual)) {
+                        System.out.println(lanes + ": wrong digest for length " + inputs[i].length);
+                        System.exit(1);
+                    }
+                }
+            }
+            System.out.println(lanes + ": ok");
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package io.eluv.crypto;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+import org.web3j.crypto.Hash;
+
+class Keccak256Test {
+
+    @Test
+    void testVectors() {
+        assertEquals(
+            "c5d2460186f7233c927e7db2dcc703c0e500b653ca82273b7bfad8045d85a470",
+            Hex.toHexString(Keccak256.hash(new byte[0])));
+        assertEquals(
+            "1c8aff950685c2ed4bc3174f3472287b56d9517b9c948127319a09a7a36deac8",
+            Hex.toHexString(Keccak256.hash("hello".getBytes())));
+    }
+
+    @Test
+    void testSameAsWeb3j() {
+        Random rnd = new Random(21);
+        for (int i = 0; i < 3000; i++) {
+            // all lengths around the block size and a few longer
+            byte[] b = new byte[i < 600 ? i : rnd.nextInt(5000)];
+            rnd.nextBytes(b);
+            assertArrayEquals(Hash.sha3(b), Keccak256.hash(b), "len " + b.length);
+        }
+    }
+
+    @Test
+    void testRangesAndUpdates() {
+        Random rnd = new Random(22);
+        Keccak256 k = new Keccak256();
+        for (int i = 0; i < 500; i++) {
+            byte[] b = new byte[rnd.nextInt(1000)];
+            rnd.nextBytes(b);
+            int off = b.length == 0 ? 0 : rnd.nextInt(b.length);
+            int len = rnd.nextInt(b.length - off + 1);
+            byte[] expected = Hash.sha3(Arrays.copyOfRange(b, off, off + len));
+
+            byte[] out = new byte[40];
+            Keccak256.hash(b, off, len, out, 5);
+            assertArrayEquals(expected, Arrays.copyOfRange(out, 5, 37));
+
+            // random chunks and single bytes
+            int pos = off;
+            while (pos < off + len) {
+                int n = Math.min(off + len - pos, rnd.nextInt(200));
+                if (n == 1) {
+                    k.update(b[pos]);
+                } else {
+                    k.update(b, pos, n);
+                }
+                pos += n;
+            }
+            assertArrayEquals(expected, k.digest());
+        }
+    }
+
+    @Test
+    void testReset() {
+        Keccak256 k = new Keccak256();
+        k.update("garbage".getBytes());
+        k.reset();
+        k.update("hel".getBytes()).update("lo".getBytes());
+        assertArrayEquals(Hash.sha3("hello".getBytes()), k.digest());
+        // reset by digest
+        assertArrayEquals(Hash.sha3(new byte[0]), k.digest());
+
+        assertThrows(IndexOutOfBoundsException.class, () -> k.update(new byte[10], 5, 6));
+        assertThrows(IndexOutOfBoundsException.class, () -> k.digest(new byte[40], 9));
+    }
+
+}
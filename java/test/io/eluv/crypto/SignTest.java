@@ -1,9 +1,19 @@
 package io.eluv.crypto;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.util.encoders.Hex;
 import org.junit.jupiter.api.Test;
@@ -92,4 +102,112 @@ public class SignTest {
         assertTrue(validSig);
     }    
     
+
+    @Test
+    void testRecoverAddress() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            ECKeyPair keyPair = createRandomPrivateKey();
+            byte[] addr = Crypto.pubkeyToAddress(keyPair);
+            byte[] msg = ("message " + i).getBytes();
+            byte[] hsh = Hash.sha3(msg);
+            byte[] signature = Crypto.sign(msg, keyPair);
+            
+            assertArrayEquals(addr, Crypto.recoverAddress(msg, signature));
+            assertArrayEquals(addr, Crypto.recoverAddressFromDigest(hsh, signature, true));
+            assertArrayEquals(addr, Crypto.recoverAddressFromDigest(hsh, signature, false));
+            assertArrayEquals(addr, Crypto.recoverAddressFromDigest(hsh, Crypto.adjustSignedBytes(signature), true));
+            
+            // another message recovers another address
+            byte[] other = Hash.sha3("other".getBytes());
+            assertFalse(Arrays.equals(addr, Crypto.recoverAddressFromDigest(other, signature, true)));
+            assertFalse(Arrays.equals(addr, Crypto.recoverAddressFromDigest(other, signature, false)));
+        }
+        
+        byte[] hsh = Hash.sha3("hello".getBytes());
+        byte[] badV = new byte[Crypto.SIGNATURE_LENGTH];
+        badV[64] = 31;
+        assertThrows(SignException.class, () -> Crypto.recoverAddressFromDigest(hsh, badV, true));
+        assertThrows(SignException.class, () -> Crypto.recoverAddressFromDigest(hsh, new byte[10], false));
+    }
+
+    @Test
+    void testSecp256k1RecIdFromNonce() throws Exception {
+        Random rnd = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            byte[] pk = new byte[32];
+            rnd.nextBytes(pk);
+            pk[0] &= 0x7f;
+            Secp256k1 kp = new Secp256k1(pk);
+            PrivateKey jk = new PrivateKey(ECKeyPair.create(new BigInteger(1, pk)));
+            byte[] digest = Hash.sha3(("message " + i).getBytes());
+
+            byte[] sig = kp.sign(digest);
+            assertArrayEquals(jk.sign(digest), sig);
+
+            byte[] rs = Arrays.copyOf(sig, 64);
+            int recId = kp.nonceRecId(digest, rs);
+            assertEquals(kp.recoverRecId(digest, rs), recId);
+            assertEquals(sig[64] - 27, recId);
+        }
+    }
+
+    @Test
+    void testFastPrivateKeySign() throws Exception {
+        FastPrivateKey kp = new FastPrivateKey(KeysTest.STATIC_PK);
+        byte[] signature = Crypto.adjustSignedBytes(Crypto.sign("hello".getBytes(), kp));
+        assertEquals(
+            "e58f5a0fd01032c607103fde4ea65be179fdb81ba09d401206d2828f458e92ca06b776009320cb8e6a4db48ec1ea71c6034c3a91656a0b850ebf413aaf24d2a401",
+            Hex.toHexString(signature));
+
+        Random rnd = new Random(6);
+        for (int i = 0; i < 200; i++) {
+            byte[] pk = new byte[32];
+            rnd.nextBytes(pk);
+            pk[0] &= 0x7f;
+            ECKeyPair keyPair = ECKeyPair.create(new BigInteger(1, pk));
+            FastPrivateKey fk = new FastPrivateKey(keyPair);
+            byte[] digest = Hash.sha3(("message " + i).getBytes());
+
+            byte[] sig = fk.sign(digest);
+            assertArrayEquals(new PrivateKey(keyPair).sign(digest), sig);
+            assertArrayEquals(fk.getAddress(), Crypto.recoverAddressFromDigest(digest, sig));
+        }
+    }
+
+    @Test
+    void testConcurrentSigners() throws Exception {
+        ECKeyPair keyPair = KeysTest.staticPrivateKey();
+        final byte[][] digests = new byte[400][];
+        final byte[][] expected = new byte[digests.length][];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = Hash.sha3(("message " + i).getBytes());
+            expected[i] = Crypto.signatureBytes(Sign.signMessage(digests[i], keyPair, false));
+        }
+        Signer[] signers = new Signer[] {
+            new PrivateKey(keyPair),
+            new Signer.KeyPairSigner(keyPair),
+            new FastPrivateKey(keyPair),
+        };
+        ExecutorService ex = Executors.newFixedThreadPool(4);
+        try {
+            for (final Signer signer : signers) {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    final int first = t;
+                    futures.add(ex.submit(() -> {
+                        for (int i = first; i < digests.length; i += 4) {
+                            assertArrayEquals(expected[i], signer.sign(digests[i]), signer.getClass().getName());
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get();
+                }
+            }
+        } finally {
+            ex.shutdown();
+        }
+    }
+
 }
@@ -1,6 +1,20 @@
 package io.eluv.flate;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 
 import org.junit.jupiter.api.Test;
 
@@ -10,9 +24,131 @@ public class FlateTest {
     void testCompress() throws Exception {
         byte[] res = Flate.compressData("hello".getBytes());
         //System.out.println("compressed " + Hex.toHexString(res));
-        
+
         byte[] dec = Flate.decompressData(res);
         assertEquals("hello", new String(dec));
     }
 
+    // the stream based compression used previously
+    static byte[] streamCompress(byte[] raw) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Deflater def = new Deflater(Deflater.BEST_COMPRESSION, true);
+        def.setStrategy(Deflater.HUFFMAN_ONLY);
+        DeflaterOutputStream out = new DeflaterOutputStream(baos, def);
+        out.write(raw);
+        out.close();
+        def.end();
+        return baos.toByteArray();
+    }
+
+    static List<byte[]> samples() {
+        List<byte[]> samples = new ArrayList<byte[]>();
+        Random rnd = new Random(42);
+        for (int len : new int[] { 0, 1, 5, 100, 545, 4096, 5000, 70000 }) {
+            byte[] random = new byte[len];
+            rnd.nextBytes(random);
+            samples.add(random);
+            byte[] text = new byte[len];
+            for (int i = 0; i < len; i++) {
+                text[i] = (byte) "{\"spc\":\"ispc218Pn4tTNJELz8ASyV8o4KRggfoD\"}".charAt(i % 42);
+            }
+            samples.add(text);
+        }
+        return samples;
+    }
+
+    @Test
+    void testSameAsStreamCompression() throws Exception {
+        for (byte[] raw : samples()) {
+            byte[] expected = streamCompress(raw);
+            assertArrayEquals(expected, Flate.compressData(raw), "len " + raw.length);
+            // twice to use a pooled deflater
+            assertArrayEquals(expected, Flate.compressData(raw), "len " + raw.length);
+            assertArrayEquals(raw, Flate.decompressData(expected));
+        }
+    }
+
+    @Test
+    void testRanges() throws Exception {
+        for (byte[] raw : samples()) {
+            byte[] padded = new byte[raw.length + 10];
+            System.arraycopy(raw, 0, padded, 3, raw.length);
+            byte[] expected = streamCompress(raw);
+            assertArrayEquals(expected, Flate.compressData(padded, 3, raw.length));
+
+            byte[] out = new byte[Flate.maxCompressedLength(raw.length) + 5];
+            int n = Flate.compress(padded, 3, raw.length, out, 5);
+            assertArrayEquals(expected, Arrays.copyOfRange(out, 5, 5 + n));
+
+            byte[] dec = new byte[raw.length + 7];
+            int m = Flate.decompress(out, 5, n, dec, 7);
+            assertEquals(raw.length, m);
+            assertArrayEquals(raw, Arrays.copyOfRange(dec, 7, 7 + m));
+            assertArrayEquals(raw, Flate.decompressData(out, 5, n));
+        }
+    }
+
+    @Test
+    void testErrors() throws Exception {
+        byte[] raw = new byte[1000];
+        new Random(1).nextBytes(raw);
+        byte[] compressed = Flate.compressData(raw);
+
+        assertThrows(IOException.class, () -> Flate.compress(raw, 0, raw.length, new byte[100], 0));
+        assertThrows(IOException.class, () -> Flate.decompress(compressed, 0, compressed.length, new byte[100], 0));
+        assertThrows(IOException.class, () -> Flate.decompressData(compressed, 0, compressed.length / 2));
+        assertThrows(IOException.class, () -> Flate.decompressData(new byte[] { (byte) 0xFF, 1, 2, 3 }));
+
+        // pooled instances are still usable after errors
+        assertArrayEquals(raw, Flate.decompressData(compressed));
+        assertArrayEquals(compressed, Flate.compressData(raw));
+    }
+
+    @Test
+    void testConcurrent() throws Exception {
+        final List<byte[]> samples = samples();
+        ExecutorService exec = Executors.newFixedThreadPool(Flate.POOL_SIZE + 2);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < Flate.POOL_SIZE + 2; t++) {
+                futures.add(exec.submit(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        for (byte[] raw : samples) {
+                            assertArrayEquals(raw, Flate.decompressData(Flate.compressData(raw)));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    @Test
+    void testMaxDecompressedLength() throws Exception {
+        // a few KB inflating to several MB
+        byte[] zeros = new byte[4 * 1024 * 1024];
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Deflater def = new Deflater(Deflater.BEST_COMPRESSION, true);
+        DeflaterOutputStream out = new DeflaterOutputStream(baos, def);
+        out.write(zeros);
+        out.close();
+        def.end();
+        byte[] bomb = baos.toByteArray();
+
+        assertThrows(IOException.class, () -> Flate.decompressData(bomb, 0, bomb.length, zeros.length - 1));
+        assertThrows(IOException.class, () -> Flate.decompressData(bomb, 0, bomb.length, 1024));
+        // unbounded without a limit
+        assertArrayEquals(zeros, Flate.decompressData(bomb));
+        assertArrayEquals(zeros, Flate.decompressData(bomb, 0, bomb.length, zeros.length));
+
+        byte[] hello = Flate.compressData("hello".getBytes());
+        assertEquals("hello", new String(Flate.decompressData(hello, 0, hello.length, 5)));
+        assertThrows(IOException.class, () -> Flate.decompressData(hello, 0, hello.length, 4));
+    }
+
 }
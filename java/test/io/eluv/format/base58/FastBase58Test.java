@@ -0,0 +1,183 @@
+package io.eluv.format.base58;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+
+class FastBase58Test {
+
+    // from the test vectors of the Go mr-tron/base58 library
+    static final String[][] VECTORS = new String[][] {
+        { "", "" },
+        { "61", "2g" },
+        { "626262", "a3gV" },
+        { "636363", "aPEr" },
+        { "73696d706c792061206c6f6e6720737472696e67", "2cFupjhnEsSn59qHXstmK2ffpLv2" },
+        { "00eb15231dfceb60925886b67d065299925915aeb172c06647", "1NS17iag9jJgTHD1VXjvLCEnZuQ3rJDE9L" },
+        { "516b6fcd0f", "ABnLTmg" },
+        { "bf4f89001e670274dd", "3SEo3LWLoPntC" },
+        { "572e4794", "3EFU7m" },
+        { "ecac89cad93923c02321", "EJDM8drfXA6uyA" },
+        { "10c8511e", "Rt5zm" },
+        { "00000000000000000000", "1111111111" },
+        { "000111d38e5fc9071ffcd20b4a763cc9ae4f252bb4e48fd66a835e252ada93ff480d6dd43dc62a641155a5",
+          "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz" },
+    };
+
+    @Test
+    void testVectors() {
+        for (String[] v : VECTORS) {
+            assertEquals(v[1], FastBase58.encode(Hex.decode(v[0])), v[0]);
+        }
+        assertEquals("2NEpo7TZRRrLZSi2U", FastBase58.encode("Hello World!".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    static byte[] randomInput(Random rnd, int maxLen) {
+        byte[] b = new byte[rnd.nextInt(maxLen + 1)];
+        rnd.nextBytes(b);
+        int zeros = Math.min(rnd.nextInt(4), b.length);
+        Arrays.fill(b, 0, zeros, (byte) 0);
+        return b;
+    }
+
+    @Test
+    void testSameAsBase58() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            byte[] b = randomInput(rnd, 300);
+            assertEquals(Base58.encode(b), FastBase58.encode(b), Hex.toHexString(b));
+        }
+        // all 0xFF: longest output for its length
+        for (int len = 1; len < 70; len++) {
+            byte[] b = new byte[len];
+            Arrays.fill(b, (byte) 0xFF);
+            assertEquals(Base58.encode(b), FastBase58.encode(b));
+        }
+    }
+
+    @Test
+    void testSameAsNative() {
+        if (!NativeB58Encoder.hasLib()) {
+            return;
+        }
+        Random rnd = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            byte[] b = randomInput(rnd, 600);
+            if (b.length == 0) {
+                continue;
+            }
+            assertEquals(NativeB58Encoder.encode(b), FastBase58.encode(b));
+        }
+    }
+
+    @Test
+    void testRange() {
+        byte[] b = Hex.decode("ff0000516b6fcd0fff");
+        assertEquals("11ABnLTmg", FastBase58.encode(b, 1, 7));
+        assertEquals("", FastBase58.encode(b, 3, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> FastBase58.encode(b, 3, 7));
+        assertThrows(IndexOutOfBoundsException.class, () -> FastBase58.encode(b, -1, 2));
+    }
+
+    @Test
+    void testDecodeVectors() {
+        for (String[] v : VECTORS) {
+            assertArrayEquals(Hex.decode(v[0]), FastBase58.decode(v[1]), v[1]);
+        }
+    }
+
+    @Test
+    void testDecodeSameAsBase58() {
+        Random rnd = new Random(43);
+        for (int i = 0; i < 5000; i++) {
+            String s = Base58.encode(randomInput(rnd, 300));
+            assertArrayEquals(Base58.decode(s), FastBase58.decode(s), s);
+        }
+        // random strings - not necessarily the encoding of any bytes
+        for (int i = 0; i < 2000; i++) {
+            char[] c = new char[rnd.nextInt(200)];
+            for (int k = 0; k < c.length; k++) {
+                c[k] = FastBase58.ALPHABET[rnd.nextInt(k < 3 ? 2 : 58)];
+            }
+            String s = new String(c);
+            assertArrayEquals(Base58.decode(s), FastBase58.decode(s), s);
+        }
+    }
+
+    @Test
+    void testDecodeRange() {
+        String s = "xx11ABnLTmgxx";
+        byte[] out = new byte[12];
+        Arrays.fill(out, (byte) 0x55);
+        int n = FastBase58.decode(s, 2, 9, out, 3);
+        assertEquals(7, n);
+        assertArrayEquals(Hex.decode("0000516b6fcd0f"), Arrays.copyOfRange(out, 3, 10));
+        assertEquals(0x55, out[2]);
+        assertEquals(0x55, out[10]);
+        assertEquals(0, FastBase58.decode(s, 2, 0, out, 0));
+
+        // output buffer too small
+        assertThrows(IndexOutOfBoundsException.class, () -> FastBase58.decode(s, 2, 9, new byte[6], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> FastBase58.decode(s, 2, 9, out, 6));
+        assertThrows(IndexOutOfBoundsException.class, () -> FastBase58.decode(s, 5, 9, out, 0));
+    }
+
+    @Test
+    void testDecodeInvalid() {
+        String[] invalid = new String[] { "0", "O", "I", "l", "abc0", "1+", "\u00e9abc", "ab c", "11\u0000" };
+        byte[] out = new byte[20];
+        for (String s : invalid) {
+            assertEquals(-1, FastBase58.decode(s, 0, s.length(), out, 0), s);
+            assertThrows(IllegalArgumentException.class, () -> FastBase58.decode(s), s);
+        }
+    }
+
+    @Test
+    void testSinks() throws Exception {
+        Random rnd = new Random(44);
+        for (int i = 0; i < 2000; i++) {
+            byte[] b = randomInput(rnd, 300);
+            String expected = Base58.encode(b);
+            int n = expected.length();
+            assertEquals(n, FastBase58.encodedLength(b, 0, b.length));
+            assertTrue(n <= FastBase58.maxEncodedLength(b.length));
+
+            char[] chars = new char[FastBase58.maxEncodedLength(b.length) + 3];
+            assertEquals(n, FastBase58.encode(b, 0, b.length, chars, 3));
+            assertEquals(expected, new String(chars, 3, n));
+
+            byte[] bytes = new byte[n + 2];
+            assertEquals(n, FastBase58.encode(b, 0, b.length, bytes, 2));
+            assertEquals(expected, new String(bytes, 2, n, StandardCharsets.US_ASCII));
+
+            StringBuilder sb = new StringBuilder("prefix_");
+            assertEquals(n, FastBase58.encode(b, 0, b.length, sb));
+            assertEquals("prefix_" + expected, sb.toString());
+
+            StringWriter w = new StringWriter();
+            assertEquals(n, FastBase58.encode(b, 0, b.length, w));
+            assertEquals(expected, w.toString());
+        }
+        assertEquals("aessj_2g", Base58Encoder.encode("aessj_", Hex.decode("61")));
+        assertEquals("aessj_", Base58Encoder.encode("aessj_", new byte[0]));
+    }
+
+    @Test
+    void testSinksTooSmall() {
+        byte[] b = Hex.decode("00516b6fcd0f");
+        assertThrows(IndexOutOfBoundsException.class, () -> FastBase58.encode(b, 0, b.length, new char[7], 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> FastBase58.encode(b, 0, b.length, new byte[10], 3));
+        char[] exact = new char[8];
+        assertEquals(8, FastBase58.encode(b, 0, b.length, exact, 0));
+        assertEquals("1ABnLTmg", new String(exact));
+    }
+}
@@ -0,0 +1,108 @@
+package io.eluv.format.eat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import io.eluv.crypto.KeysTest;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.Signer;
+
+class CachingTokenVerifierTest {
+
+    @Test
+    void testCacheHitsAndExpiration() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        long now = System.currentTimeMillis();
+        String stok = tpl.signEncode(sk, null, now, now + TokenFactory.HOUR);
+
+        CachingTokenVerifier cache = new CachingTokenVerifier(TokenVerifierTest.verifier(), 10, 100000);
+        Token t1 = cache.verify(stok, now);
+        Token t2 = cache.verify(stok, now + 1);
+        assertNotSame(t1, t2);
+        assertEquals(t1, t2);
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.size());
+        assertEquals(stok.length(), cache.weight());
+
+        // expired: removed from the cache and rejected by the verifier
+        assertThrows(TokenException.class, () -> cache.verify(stok, now + TokenFactory.HOUR));
+        assertEquals(1, cache.expirationCount());
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+
+        // invalid tokens are not cached
+        assertThrows(TokenException.class, () -> cache.verify(stok.substring(0, stok.length() - 2), now));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testBounds() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        long now = System.currentTimeMillis();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            tokens.add(tpl.signEncode(sk, "subject-" + i, now, now + TokenFactory.HOUR));
+        }
+
+        CachingTokenVerifier cache = new CachingTokenVerifier(TokenVerifierTest.verifier(), 10, Long.MAX_VALUE);
+        for (String s : tokens) {
+            cache.verify(s, now);
+            assertTrue(cache.size() <= 10);
+        }
+        assertTrue(cache.evictionCount() >= 20);
+
+        int len = tokens.get(0).length();
+        cache = new CachingTokenVerifier(TokenVerifierTest.verifier(), 100, len * 5L);
+        for (String s : tokens) {
+            cache.verify(s, now);
+            assertTrue(cache.weight() <= len * 5L);
+        }
+
+        // max ttl
+        cache = new CachingTokenVerifier(TokenVerifierTest.verifier(), 100, Long.MAX_VALUE, 1000);
+        cache.verify(tokens.get(0), now);
+        cache.verify(tokens.get(0), now + 1000);
+        assertEquals(0, cache.hitCount());
+        assertEquals(1, cache.expirationCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCallersGetCopies() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        HashMap<String, Object> ctx = new HashMap<>();
+        ctx.put("tags", new ArrayList<>(Arrays.asList("a", "b")));
+        String stok = new TokenFactory.EditorSigned(
+            "ispc329GX6UVyuWzwPzqDHm5shxfNgrc",
+            "ilib329GX6UVyuWzwPzqDHm5shxfNgrc",
+            "iq__329GX6UVyuWzwPzqDHm5shxfNgrc")
+            .withContext(ctx)
+            .signEncode(sk);
+
+        CachingTokenVerifier cache = new CachingTokenVerifier(TokenVerifierTest.verifier(), 10, 100000);
+        Token expected = TokenVerifierTest.verifier().verify(stok);
+        // a caller modifying the token it got, on a miss then on a hit
+        for (int i = 0; i < 2; i++) {
+            Token t = cache.verify(stok);
+            assertEquals(expected, t);
+            t.getTokenData().Subject = "changed";
+            t.getTokenData().Ctx.put("added", "x");
+            ((List<Object>) t.getTokenData().Ctx.get("tags")).add("c");
+        }
+        // is not seen by the next one
+        Token t = cache.verify(stok);
+        assertEquals(expected, t);
+        assertEquals(Arrays.asList("a", "b"), t.getTokenData().Ctx.get("tags"));
+        assertEquals(2, cache.hitCount());
+    }
+
+}
@@ -0,0 +1,129 @@
+package io.eluv.format.eat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import io.eluv.crypto.KeysTest;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.Signer;
+
+class EditorSignedTemplateTest {
+
+    static final String SPC_ID = "ispc218Pn4tTNJELz8ASyV8o4KRggfoD";
+    static final String LIB_ID = "ilib3FfPwGraXTRgoq2Xu4oC7eJgT5Tj";
+    static final String Q_ID   = "iq__35BUYfYD44N2vZniVHrqaadrh8mC";
+
+    static EditorSignedTemplate sampleTemplate(boolean compressed) throws Exception {
+        HashMap<String, Object> ctx = new HashMap<String, Object>();
+        TokenTest.fillSampleContext(ctx);
+        return new EditorSignedTemplate.Builder(SPC_ID, LIB_ID, Q_ID, compressed)
+            .withAFGHPublicKey("my_afgh")
+            .withExpiresIn(TokenFactory.HOUR * 4)
+            .withContext(ctx)
+            .withDelegationId(Q_ID)
+            .build();
+    }
+
+    @Test
+    void testTemplateSameAsBuilder() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = sampleTemplate(true);
+
+        TokenFactory.EditorSigned es = tpl.newEditorSigned();
+        String expected = es.signEncode(sk);
+        Token built = es.mToken;
+
+        String stok = tpl.signEncode(
+            sk,
+            built.mTokenData.Subject,
+            built.mTokenData.IssuedAt,
+            built.mTokenData.Expires);
+        assertEquals(expected, stok);
+
+        // subject is taken from the signer
+        assertEquals(stok, tpl.signEncode(sk, null, built.mTokenData.IssuedAt, built.mTokenData.Expires));
+
+        // the builder does not share the context of the template
+        es.mToken.mTokenData.Ctx.put("foo", "bar");
+        assertFalse(tpl.newEditorSigned().mToken.mTokenData.Ctx.containsKey("foo"));
+    }
+
+    @Test
+    void testPreEncodedJson() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = sampleTemplate(false);
+        TokenDataJson.Template json = new TokenDataJson.Template(tpl.newToken(null, 0, 0).mTokenData);
+        long now = System.currentTimeMillis();
+        String[] subjects = { "subject", "iusr2nC7YB7V1Ceegfjv4h3Kuo5e1kMX", "quote\"d", "\u00e9t\u00e9", "" };
+        long[] times = { now, 0, -1, Long.MAX_VALUE, Long.MIN_VALUE };
+        for (String subject : subjects) {
+            for (long t : times) {
+                Token token = tpl.newToken(subject, t, now);
+                token.mTokenData.EthAddr = sk.getAddress();
+                byte[] expected = TokenDataJson.encode(token.mTokenData);
+                TokenBuffer out = new TokenBuffer(16, 0, false);
+                if (json.encode(token.mTokenData, out)) {
+                    assertArrayEquals(expected, out.toByteArray(), subject + " " + t);
+                } else {
+                    assertEquals(0, out.size());
+                }
+            }
+        }
+
+        // no grant, AFGH key or context
+        TokenData td = new TokenData();
+        td.SID = SPC_ID;
+        td.EthAddr = sk.getAddress();
+        td.Subject = "subject";
+        TokenBuffer out = new TokenBuffer(16, 0, false);
+        assertTrue(new TokenDataJson.Template(td).encode(td, out));
+        assertArrayEquals(TokenDataJson.encode(td), out.toByteArray());
+    }
+
+    @Test
+    void testInvalidIds() throws Exception {
+        assertThrows(TokenException.class,
+            () -> new EditorSignedTemplate.Builder(LIB_ID, LIB_ID, Q_ID));
+        assertThrows(IllegalArgumentException.class,
+            () -> new EditorSignedTemplate.Builder(SPC_ID, LIB_ID, Q_ID).withDelegationId(LIB_ID));
+    }
+
+    @Test
+    void testJsonOnly() throws Exception {
+        for (TokenFormat format : new TokenFormat[] { TokenFormat.CBOR, TokenFormat.CBOR_COMPRESSED }) {
+            assertThrows(TokenException.class,
+                () -> new EditorSignedTemplate.Builder(SPC_ID, LIB_ID, Q_ID, format));
+            assertThrows(TokenException.class,
+                () -> new TokenFactory.EditorSigned(SPC_ID, LIB_ID, Q_ID, format));
+        }
+    }
+
+    @Test
+    void testConcurrentIssuance() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = sampleTemplate(false);
+        long now = System.currentTimeMillis();
+        String expected = tpl.signEncode(sk, null, now, now + TokenFactory.HOUR);
+
+        ExecutorService ex = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> res = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                res.add(ex.submit(() -> tpl.signEncode(sk, null, now, now + TokenFactory.HOUR)));
+            }
+            for (Future<String> f : res) {
+                assertEquals(expected, f.get());
+            }
+        } finally {
+            ex.shutdown();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package io.eluv.format.eat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import io.eluv.crypto.KeysTest;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.SignTest;
+import io.eluv.crypto.Signer;
+
+class IssuedTokenCacheTest {
+
+    @Test
+    void testIssuedTokenCache() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        Signer sk2 = new Signer.KeyPairSigner(SignTest.createRandomPrivateKey());
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        IssuedTokenCache cache = new IssuedTokenCache(100, TokenFactory.HOUR);
+
+        String t1 = cache.signEncode(tpl.newEditorSigned(), sk);
+        // context values are compared deeply
+        TokenFactory.EditorSigned es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("authorized_offerings", new String[] {"default", "special"});
+        assertSame(t1, cache.signEncode(es, sk));
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+
+        // different claims or signer
+        assertNotEquals(t1, cache.signEncode(tpl.newEditorSigned().withSubject("other"), sk));
+        assertNotEquals(t1, cache.signEncode(tpl.newEditorSigned(), sk2));
+        es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("authorized_offerings", new String[] {"default"});
+        assertNotEquals(t1, cache.signEncode(es, sk));
+        assertEquals(4, cache.missCount());
+        assertEquals(4, cache.size());
+
+        // a token expiring before the cached one is not served from the cache
+        assertNotEquals(t1, cache.signEncode(tpl.newEditorSigned().withExpiresIn(TokenFactory.HOUR * 2), sk));
+
+        // not enough remaining lifetime: signed but not cached
+        cache = new IssuedTokenCache(100, TokenFactory.HOUR * 5);
+        String t2 = cache.signEncode(tpl.newEditorSigned(), sk);
+        assertEquals(0, cache.size());
+        assertNotNull(t2);
+    }
+
+    @Test
+    void testBounds() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        IssuedTokenCache cache = new IssuedTokenCache(10, 0);
+        for (int i = 0; i < 30; i++) {
+            cache.signEncode(tpl.newEditorSigned().withSubject("subject-" + i), sk);
+            assertTrue(cache.size() <= 10);
+        }
+        assertTrue(cache.evictionCount() >= 20);
+    }
+
+    @Test
+    void testContextSnapshot() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        IssuedTokenCache cache = new IssuedTokenCache(100, TokenFactory.HOUR);
+
+        // nested values modified after the token was issued
+        List<Object> offerings = new ArrayList<>(Arrays.asList("default"));
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("offerings", offerings);
+        TokenFactory.EditorSigned es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("nested", nested);
+        String t1 = cache.signEncode(es, sk);
+        offerings.add("special");
+
+        es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("nested", nested);
+        assertNotEquals(t1, cache.signEncode(es, sk));
+
+        Map<String, Object> same = new HashMap<>();
+        same.put("offerings", new ArrayList<>(Arrays.asList("default")));
+        es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("nested", same);
+        assertSame(t1, cache.signEncode(es, sk));
+
+        // arrays nested in collections compare by content
+        Map<String, Object> withArrays = new HashMap<>();
+        withArrays.put("ranges", new ArrayList<>(Arrays.asList(new int[] { 1, 2 }, new String[] { "a" })));
+        es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("nested", withArrays);
+        String t2 = cache.signEncode(es, sk);
+        Map<String, Object> sameArrays = new HashMap<>();
+        sameArrays.put("ranges", new ArrayList<>(Arrays.asList(new int[] { 1, 2 }, new String[] { "a" })));
+        es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("nested", sameArrays);
+        assertSame(t2, cache.signEncode(es, sk));
+        ((int[]) ((List<?>) sameArrays.get("ranges")).get(0))[1] = 3;
+        es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("nested", sameArrays);
+        assertNotEquals(t2, cache.signEncode(es, sk));
+
+        // values that can't be copied: not cached
+        int size = cache.size();
+        es = tpl.newEditorSigned();
+        es.mToken.mTokenData.Ctx.put("counter", new AtomicLong());
+        cache.signEncode(es, sk);
+        assertEquals(size, cache.size());
+
+        int[] ints = { 1, 2 };
+        Object[] copy = (Object[]) IssuedTokenCache.snapshot(new Object[] { ints, "s" });
+        assertNotSame(ints, copy[0]);
+        assertArrayEquals(ints, (int[]) copy[0]);
+    }
+}
@@ -0,0 +1,112 @@
+package io.eluv.format.eat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.eluv.crypto.KeysTest;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.SignException;
+import io.eluv.crypto.Signer;
+
+class TokenFactoryTest {
+
+    @Test
+    void testSignEncodeAll() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+
+        List<TokenFactory.EditorSigned> specs = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            TokenFactory.EditorSigned es = tpl.newEditorSigned().withSubject("subject-" + i);
+            specs.add(es);
+            if (i == 17) {
+                // a token that can't be encoded
+                specs.set(i, new TokenFactory.EditorSigned(new Token(TokenType.UNKNOWN, TokenFormat.JSON)));
+                expected.add(null);
+                continue;
+            }
+            Token t = es.mToken;
+            expected.add(tpl.signEncode(sk, t.mTokenData.Subject, t.mTokenData.IssuedAt, t.mTokenData.Expires));
+        }
+
+        ExecutorService ex = Executors.newFixedThreadPool(3);
+        try {
+            List<List<TokenFactory.SignResult>> runs = new ArrayList<>();
+            runs.add(TokenFactory.signEncodeAll(specs, sk));
+            runs.add(TokenFactory.signEncodeAll(specs, sk, ex));
+            for (List<TokenFactory.SignResult> res : runs) {
+                assertEquals(specs.size(), res.size());
+                for (int i = 0; i < res.size(); i++) {
+                    TokenFactory.SignResult r = res.get(i);
+                    if (expected.get(i) == null) {
+                        assertFalse(r.isOk());
+                        assertNotNull(r.getError());
+                        assertNull(r.getToken());
+                    } else {
+                        assertTrue(r.isOk());
+                        assertEquals(expected.get(i), r.getToken());
+                    }
+                }
+            }
+        } finally {
+            ex.shutdown();
+        }
+
+        assertTrue(TokenFactory.signEncodeAll(new ArrayList<>(), sk).isEmpty());
+    }
+
+    @Test
+    void testSignEncodeAllFailures() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        List<TokenFactory.EditorSigned> specs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            specs.add(tpl.newEditorSigned().withSubject("subject-" + i));
+        }
+
+        // chunks rejected by the executor are signed by the caller
+        ExecutorService ex = Executors.newFixedThreadPool(2);
+        ex.shutdown();
+        for (TokenFactory.SignResult r : TokenFactory.signEncodeAll(specs, sk, ex)) {
+            assertTrue(r.isOk());
+        }
+
+        // an error fails only its token
+        AtomicInteger count = new AtomicInteger();
+        Signer failing = new Signer() {
+            @Override
+            public byte[] sign(byte[] digestHash) throws SignException {
+                if (count.incrementAndGet() == 5) {
+                    throw new AssertionError("boom");
+                }
+                return sk.sign(digestHash);
+            }
+
+            @Override
+            public byte[] getAddress() {
+                return sk.getAddress();
+            }
+        };
+        List<TokenFactory.SignResult> res = TokenFactory.signEncodeAll(specs, failing, Runnable::run);
+        int failed = 0;
+        for (TokenFactory.SignResult r : res) {
+            if (!r.isOk()) {
+                failed++;
+                assertTrue(r.getError().getCause() instanceof AssertionError);
+            }
+        }
+        assertEquals(1, failed);
+
+        // the same builder twice
+        specs.add(specs.get(0));
+        assertThrows(IllegalArgumentException.class, () -> TokenFactory.signEncodeAll(specs, sk));
+    }
+}
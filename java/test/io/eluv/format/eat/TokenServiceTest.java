@@ -0,0 +1,217 @@
+package io.eluv.format.eat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import io.eluv.crypto.KeysTest;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.SignException;
+import io.eluv.crypto.Signer;
+
+class TokenServiceTest {
+
+    // blocks signing threads of the service until released
+    static class BlockingSigner implements Signer {
+        final Signer         mSigner;
+        final CountDownLatch mRelease = new CountDownLatch(1);
+        final CountDownLatch mStarted = new CountDownLatch(1);
+
+        BlockingSigner(Signer signer) {
+            mSigner = signer;
+        }
+
+        @Override
+        public byte[] sign(byte[] digestHash) throws SignException {
+            if (Thread.currentThread().getName().startsWith("elv-token-signer-")) {
+                mStarted.countDown();
+                try {
+                    mRelease.await();
+                } catch (InterruptedException e) {
+                    throw new SignException("interrupted", e);
+                }
+            }
+            return mSigner.sign(digestHash);
+        }
+
+        @Override
+        public byte[] getAddress() {
+            return mSigner.getAddress();
+        }
+    }
+
+    static TokenException failure(CompletableFuture<String> f) throws Exception {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> f.get(10, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TokenException, "" + e.getCause());
+        return (TokenException) e.getCause();
+    }
+
+    @Test
+    void testSignEncode() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(true);
+        TokenVerifier verifier = TokenVerifierTest.verifier();
+
+        try (TokenService service = new TokenService.Builder(sk).withThreads(2).build()) {
+            assertFalse(service.usesVirtualThreads());
+
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(service.signEncode(tpl, "subject-" + i));
+            }
+            TokenFactory.EditorSigned es = tpl.newEditorSigned().withSubject("builder");
+            CompletableFuture<String> fromBuilder = service.signEncode(es);
+
+            for (int i = 0; i < futures.size(); i++) {
+                Token tok = verifier.verify(futures.get(i).get(10, TimeUnit.SECONDS));
+                assertEquals("subject-" + i, tok.getTokenData().Subject);
+            }
+            assertEquals("builder", verifier.verify(fromBuilder.get(10, TimeUnit.SECONDS)).getTokenData().Subject);
+
+            // errors are reported through the future
+            TokenFactory.EditorSigned invalid = new TokenFactory.EditorSigned(new Token(TokenType.UNKNOWN, TokenFormat.JSON));
+            failure(service.signEncode(invalid));
+        }
+    }
+
+    @Test
+    void testRejection() throws Exception {
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        boolean[] virtual = TokenService.supportsVirtualThreads() ? new boolean[] {false, true} : new boolean[] {false};
+        for (int i = 0; i < virtual.length * 2; i++) {
+            TokenService.RejectionPolicy policy = TokenService.RejectionPolicy.values()[i % 2];
+            BlockingSigner sk = new BlockingSigner(new Secp256k1(KeysTest.STATIC_PK));
+            TokenService service = new TokenService.Builder(sk)
+                .withThreads(1)
+                .withQueueCapacity(2)
+                .withRejectionPolicy(policy)
+                .withVirtualThreads(virtual[i / 2])
+                .build();
+            try {
+                // one signing, two queued - or three in flight on virtual threads
+                List<CompletableFuture<String>> accepted = new ArrayList<>();
+                accepted.add(service.signEncode(tpl, "s0"));
+                assertTrue(sk.mStarted.await(10, TimeUnit.SECONDS));
+                accepted.add(service.signEncode(tpl, "s1"));
+                accepted.add(service.signEncode(tpl, "s2"));
+                assertEquals(service.usesVirtualThreads() ? 0 : 2, service.getQueueSize());
+
+                CompletableFuture<String> saturated = service.signEncode(tpl, "s3");
+                if (policy == TokenService.RejectionPolicy.ABORT) {
+                    TokenException e = failure(saturated);
+                    assertTrue(e.getCause() instanceof RejectedExecutionException);
+                } else {
+                    // signed on this thread
+                    assertTrue(saturated.isDone());
+                    assertEquals("s3", TokenVerifierTest.verifier().verify(saturated.get()).getTokenData().Subject);
+                }
+
+                sk.mRelease.countDown();
+                for (CompletableFuture<String> f : accepted) {
+                    assertNotNull(f.get(10, TimeUnit.SECONDS));
+                }
+            } finally {
+                sk.mRelease.countDown();
+                service.close();
+            }
+            failure(service.signEncode(tpl, "closed"));
+        }
+    }
+
+    @Test
+    void testShutdown() throws Exception {
+        BlockingSigner sk = new BlockingSigner(new Secp256k1(KeysTest.STATIC_PK));
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        TokenService service = new TokenService.Builder(sk).withThreads(1).build();
+
+        CompletableFuture<String> pending = service.signEncode(tpl, "pending");
+        CompletableFuture<String> queued = service.signEncode(tpl, "queued");
+        service.shutdown();
+        failure(service.signEncode(tpl, "rejected"));
+        assertFalse(service.awaitTermination(10, TimeUnit.MILLISECONDS));
+
+        // tokens submitted before shutdown are still issued
+        sk.mRelease.countDown();
+        assertTrue(service.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(pending.isDone() && !pending.isCompletedExceptionally());
+        assertTrue(queued.isDone() && !queued.isCompletedExceptionally());
+    }
+
+    @Test
+    void testFailures() throws Exception {
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        Throwable[] thrown = new Throwable[] {
+            new IllegalStateException("runtime"), new AssertionError("error") };
+        boolean[] virtual = TokenService.supportsVirtualThreads() ? new boolean[] {false, true} : new boolean[] {false};
+        for (Throwable t : thrown) {
+            Signer failing = new Signer() {
+                @Override
+                public byte[] sign(byte[] digestHash) {
+                    if (t instanceof Error) {
+                        throw (Error) t;
+                    }
+                    throw (RuntimeException) t;
+                }
+
+                @Override
+                public byte[] getAddress() {
+                    return sk.getAddress();
+                }
+            };
+            for (boolean v : virtual) {
+                try (TokenService service = new TokenService.Builder(failing).withVirtualThreads(v).build()) {
+                    // the future fails instead of staying pending
+                    TokenException e = failure(service.signEncode(tpl, "failing"));
+                    Throwable cause = e;
+                    while (cause != null && cause != t) {
+                        cause = cause.getCause();
+                    }
+                    assertSame(t, cause);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testVirtualThreads() throws Exception {
+        // run on JDK 21+ to cover the virtual threads path
+        String spec = System.getProperty("java.specification.version");
+        boolean java21 = !spec.startsWith("1.") && Integer.parseInt(spec) >= 21;
+        assertEquals(java21, TokenService.supportsVirtualThreads(), "java " + spec);
+
+        Thread[] signing = new Thread[1];
+        Signer secp = new Secp256k1(KeysTest.STATIC_PK);
+        Signer sk = new Signer() {
+            @Override
+            public byte[] sign(byte[] digestHash) throws SignException {
+                signing[0] = Thread.currentThread();
+                return secp.sign(digestHash);
+            }
+
+            @Override
+            public byte[] getAddress() {
+                return secp.getAddress();
+            }
+        };
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        try (TokenService service = new TokenService.Builder(sk).withVirtualThreads(true).build()) {
+            // falls back to platform threads before Java 21
+            assertEquals(java21, service.usesVirtualThreads());
+            String stok = service.signEncode(tpl, "virtual").get(10, TimeUnit.SECONDS);
+            assertEquals("virtual", TokenVerifierTest.verifier().verify(stok).getTokenData().Subject);
+            if (java21) {
+                assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(signing[0]));
+            }
+        }
+    }
+
+}
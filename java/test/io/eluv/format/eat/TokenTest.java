@@ -2,7 +2,12 @@ package io.eluv.format.eat;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 
 import org.bouncycastle.util.encoders.Hex;
@@ -14,7 +19,9 @@ import io.eluv.constants.Constants;
 import io.eluv.crypto.Crypto;
 import io.eluv.crypto.KeysTest;
 import io.eluv.crypto.Signer;
+import io.eluv.flate.Flate;
 import io.eluv.format.id.Id;
+import io.eluv.json.Json;
 
 
 class TokenTest {
@@ -57,8 +64,8 @@ class TokenTest {
         Token built = es.mToken;
         
         BigInteger pubKeyRec = Sign.signedMessageToKey(
-                built.mTokenBytes, 
-                Crypto.signatureData(built.mSignature));
+                built.tokenBytes(), 
+                Crypto.signatureData(built.signature()));
         //System.out.println("Recovered public key: " + pubKeyRec.toString(16));
         assertTrue(sk.getPublicKey().equals(pubKeyRec));
         
@@ -79,16 +86,250 @@ class TokenTest {
         
         tok.sign(new Signer.KeyPairSigner(sk));
         assertNotNull(tok.mTokenData.EthAddr);
-        assertNotNull(tok.mSignature);
+        assertNotNull(tok.signature());
         String ser = tok.encode();
         
         assertEquals(built, tok);
         System.out.println("testTokenEncode: " + ser);
         
         BigInteger pubKeyRec2 = Sign.signedMessageToKey(
-                tok.mTokenBytes, 
-                Crypto.signatureData(tok.mSignature));
+                tok.tokenBytes(), 
+                Crypto.signatureData(tok.signature()));
         assertTrue(sk.getPublicKey().equals(pubKeyRec2));
     }
 
+    static TokenFactory.EditorSigned editorSigned(TokenFormat format) throws TokenException {
+        return new TokenFactory.EditorSigned(
+            "ispc218Pn4tTNJELz8ASyV8o4KRggfoD", 
+            "ilib3FfPwGraXTRgoq2Xu4oC7eJgT5Tj", 
+            "iq__35BUYfYD44N2vZniVHrqaadrh8mC",
+            format);
+    }
+
+    @Test
+    void testTokenDecode() throws Exception {
+        ECKeyPair sk = KeysTest.staticPrivateKey();
+        
+        TokenFormat[] formats = new TokenFormat[] {
+            TokenFormat.JSON,
+            TokenFormat.JSON_COMPRESSED,
+        };
+        for (TokenFormat format : formats) {
+            HashMap<String, Object> ctx = new HashMap<String, Object>();
+            ctx.put("authorized_meta", "/preferences");
+            ctx.put("authorized_offerings", Arrays.asList("default", "special"));
+            ctx.put("count", 3);
+            TokenFactory.EditorSigned es = editorSigned(format)
+                .withAFGHPublicKey("my_afgh")
+                .withContext(ctx);
+            String stok = es.signEncode(sk);
+            
+            Token decoded = Token.decode(stok);
+            assertEquals(es.mToken, decoded);
+            assertEquals(TokenType.EDITOR_SIGNED, decoded.getType());
+            assertEquals(TokenSigType.ES256K, decoded.getSigType());
+            assertEquals(format, decoded.getFormat());
+            assertArrayEquals(es.mToken.signature(), decoded.signature());
+            assertArrayEquals(es.mToken.tokenBytes(), decoded.tokenBytes());
+            assertEquals(stok, decoded.encode());
+        }
+        
+        String[] invalid = new String[] {
+            null, 
+            "", 
+            "aessj",
+            "xxxxj_3WWhmBg9b4cCUj5ngABmstKKk24xsBkjQ",
+            "aessj_3WWhmBg9b4cCUj5ngABmstKKk24xsBkjQ0",
+            "aessj_3WWhmBg9b4cCUj5ngABmstKKk24xsBkjQ",
+        };
+        for (String s : invalid) {
+            assertThrows(TokenException.class, () -> Token.decode(s), "" + s);
+        }
+    }
+
+    @Test
+    void testSignPipeline() throws Exception {
+        ECKeyPair sk = KeysTest.staticPrivateKey();
+        Signer signer = new Signer.KeyPairSigner(sk);
+        
+        TokenFormat[] formats = new TokenFormat[] {
+            TokenFormat.JSON,
+            TokenFormat.JSON_COMPRESSED,
+        };
+        for (TokenFormat format : formats) {
+            // small tokens and tokens outgrowing the initial buffers
+            for (int ctxSize : new int[] {0, 10, 2000}) {
+                HashMap<String, Object> ctx = new HashMap<String, Object>();
+                for (int i = 0; i < ctxSize; i++) {
+                    ctx.put("key_" + i, "value_" + i);
+                }
+                TokenFactory.EditorSigned es = editorSigned(format)
+                    .withContext(ctx);
+                Token tok = es.sign(signer);
+                String msg = format + " ctx " + ctxSize;
+                
+                // same bytes as serialized separately
+                byte[] tokenBytes = tok.tokenBytes();
+                assertArrayEquals(tok.encodeBytes(), tokenBytes, msg);
+                assertEquals(Crypto.SIGNATURE_LENGTH + tokenBytes.length, tok.mSignedLen, msg);
+                if (format == TokenFormat.JSON_COMPRESSED) {
+                    assertArrayEquals(tok.encodeBytesNoCompression(), Flate.decompressData(tokenBytes), msg);
+                }
+                
+                // signature of the hash computed while serializing
+                assertEquals(sk.getPublicKey(), 
+                    Sign.signedMessageToKey(tokenBytes, Crypto.signatureData(tok.signature())), msg);
+                
+                String stok = tok.encode();
+                assertEquals(stok.length(), tok.encodedLength(), msg);
+                Token decoded = Token.decode(stok);
+                assertEquals(tok, decoded, msg);
+                assertEquals(stok, decoded.encode(), msg);
+            }
+        }
+    }
+
+    static class SampleBean {
+        public String someName = "bean";
+        public int    someCount = 2;
+    }
+    
+    @Test
+    void testJsonEncodingMatchesDataBinding() throws Exception {
+        Json json = new Json();
+        
+        TokenData td = new TokenData();
+        assertArrayEquals(json.serialize(td), TokenDataJson.encode(td));
+        assertEquals(td, TokenDataJson.decode(json.serialize(td), 0, json.serialize(td).length));
+        
+        td.EthTxHash = Hex.decode("0102030405060708090a");
+        td.EthAddr = Hex.decode("b1b64faf9cdd5d6b29f5f6a0d3c2e5bb4bc04a45");
+        td.AFGHPublicKey = "my_afgh";
+        td.QPHash = "hqp_1234";
+        td.SID = "ispc218Pn4tTNJELz8ASyV8o4KRggfoD";
+        td.LID = "ilib3FfPwGraXTRgoq2Xu4oC7eJgT5Tj";
+        td.QID = "iq__35BUYfYD44N2vZniVHrqaadrh8mC";
+        td.Subject = "iusr\"quoted\"\u00fc\n";
+        td.Grant = "read";
+        td.IssuedAt = 1604415545123L;
+        td.Expires = -1;
+        fillSampleContext(td.Ctx);
+        HashMap<String, Object> nested = new HashMap<String, Object>();
+        nested.put("a", 1);
+        nested.put("b", null);
+        nested.put("c", Arrays.asList(1L << 40, 2.5, null, true, "x"));
+        td.Ctx.put("nested", nested);
+        td.Ctx.put("removed", null);
+        td.Ctx.put("big", BigInteger.ONE.shiftLeft(70));
+        td.Ctx.put("ints", new int[] {1, 2, 3});
+        td.Ctx.put("float", 1.5f);
+        td.Ctx.put("bean", new SampleBean());
+        
+        byte[] expected = json.serialize(td);
+        assertArrayEquals(expected, TokenDataJson.encode(td), new String(expected, "UTF-8"));
+        
+        TokenData decoded = TokenDataJson.decode(expected, 0, expected.length);
+        assertEquals(json.deserialize(expected, TokenData.class), decoded);
+        assertArrayEquals(expected, TokenDataJson.encode(decoded));
+        
+        byte[] padded = new byte[expected.length + 4];
+        System.arraycopy(expected, 0, padded, 2, expected.length);
+        assertEquals(decoded, TokenDataJson.decode(padded, 2, expected.length));
+        
+        // unknown fields are ignored
+        byte[] unknown = "{\"xyz\":{\"a\":[1]},\"gra\":\"read\",\"ctx\":null}".getBytes("UTF-8");
+        TokenData td2 = TokenDataJson.decode(unknown, 0, unknown.length);
+        assertEquals("read", td2.Grant);
+        assertNull(td2.Ctx);
+        
+        String[] invalid = new String[] {
+            "", 
+            "[]", 
+            "{\"gra\":\"read\"",
+            "{\"ctx\":{\"a\":[1,",
+            "{\"iat\":\"x\"}",
+            "{\"ctx\":[]}",
+        };
+        for (String s : invalid) {
+            byte[] b = s.getBytes("UTF-8");
+            assertThrows(IOException.class, () -> TokenDataJson.decode(b, 0, b.length), s);
+        }
+    }
+
+    @Test
+    void testEncodeTo() throws Exception {
+        ECKeyPair sk = KeysTest.staticPrivateKey();
+        Signer signer = new Signer.KeyPairSigner(sk);
+        
+        HashMap<String, Object> ctx = new HashMap<String, Object>();
+        fillSampleContext(ctx);
+        TokenFactory.EditorSigned es = new TokenFactory.EditorSigned(
+            "ispc218Pn4tTNJELz8ASyV8o4KRggfoD", 
+            "ilib3FfPwGraXTRgoq2Xu4oC7eJgT5Tj", 
+            "iq__35BUYfYD44N2vZniVHrqaadrh8mC",
+            true)
+            .withContext(ctx);
+        Token token = es.sign(signer);
+        String expected = token.encode();
+        assertEquals(expected.length(), token.encodedLength());
+        assertTrue(token.maxEncodedLength() >= expected.length());
+        
+        ByteBuffer[] buffers = new ByteBuffer[] {
+            ByteBuffer.allocate(token.maxEncodedLength() + 10),
+            ByteBuffer.allocateDirect(token.maxEncodedLength() + 10),
+            // heap buffer with an array offset
+            ByteBuffer.wrap(new byte[token.maxEncodedLength() + 20], 5, token.maxEncodedLength() + 10).slice(),
+        };
+        for (ByteBuffer buf : buffers) {
+            buf.position(7);
+            int n = token.encodeTo(buf);
+            assertEquals(expected.length(), n);
+            assertEquals(7 + n, buf.position());
+            byte[] b = new byte[n];
+            buf.position(7);
+            buf.get(b);
+            assertEquals(expected, new String(b, StandardCharsets.US_ASCII));
+            
+            // too small: nothing written
+            for (int size : new int[] { 3, n - 1 }) {
+                buf.clear();
+                buf.limit(size);
+                assertThrows(BufferOverflowException.class, () -> token.encodeTo(buf));
+                assertEquals(0, buf.position());
+            }
+            // exact size
+            buf.clear();
+            buf.limit(n);
+            assertEquals(n, token.encodeTo(buf));
+            assertFalse(buf.hasRemaining());
+        }
+        
+        // unsigned
+        Token unsigned = new Token(TokenType.EDITOR_SIGNED, TokenFormat.JSON);
+        unsigned.mTokenData.SID = "ispc218Pn4tTNJELz8ASyV8o4KRggfoD";
+        ByteBuffer buf = ByteBuffer.allocate(unsigned.maxEncodedLength());
+        int n = unsigned.encodeTo(buf);
+        assertEquals(unsigned.encode(), new String(buf.array(), 0, n, StandardCharsets.US_ASCII));
+        
+        // builders
+        buf = ByteBuffer.allocateDirect(2048);
+        n = es.signEncodeTo(signer, buf);
+        byte[] b = new byte[n];
+        buf.flip();
+        buf.get(b);
+        String stok = new String(b, StandardCharsets.US_ASCII);
+        assertEquals(es.mToken.encode(), stok);
+        assertEquals(stok, Token.decode(stok).encode());
+        
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(true);
+        buf.clear();
+        n = tpl.signEncodeTo(signer, buf);
+        b = new byte[n];
+        buf.flip();
+        buf.get(b);
+        Token decoded = Token.decode(new String(b, StandardCharsets.US_ASCII));
+        assertEquals(TokenSigType.ES256K, decoded.getSigType());
+        assertEquals(EditorSignedTemplateTest.Q_ID, decoded.getTokenData().QID);
+    }
+    
 }
@@ -0,0 +1,119 @@
+package io.eluv.format.eat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import io.eluv.crypto.Crypto;
+import io.eluv.crypto.KeysTest;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.SignTest;
+import io.eluv.crypto.Signer;
+import io.eluv.format.base58.Base58;
+
+class TokenVerifierTest {
+
+    // a verifier trusting the key of the tests
+    static TokenVerifier verifier() throws Exception {
+        return new TokenVerifier.Builder()
+            .withTrustedSigners(new Secp256k1(KeysTest.STATIC_PK).getAddress())
+            .build();
+    }
+
+    @Test
+    void testVerify() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        TokenVerifier verifier = verifier();
+
+        for (boolean compressed : new boolean[] {false, true}) {
+            EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(compressed);
+            long now = System.currentTimeMillis();
+            String stok = tpl.signEncode(sk, null, now, now + TokenFactory.HOUR);
+
+            Token tok = verifier.verify(stok);
+            assertArrayEquals(sk.getAddress(), tok.getTokenData().EthAddr);
+            assertEquals(now, tok.getTokenData().IssuedAt);
+
+            // expiration
+            assertThrows(TokenException.class, () -> verifier.verify(stok, now + TokenFactory.HOUR));
+            new TokenVerifier.Builder()
+                .withTrustedSigners(sk.getAddress())
+                .withClockSkew(1000)
+                .build()
+                .verify(stok, now + TokenFactory.HOUR);
+
+            // signed by another key: the address of the token does not match
+            Token other = tpl.newToken(tok.getTokenData().Subject, now, now + TokenFactory.HOUR);
+            other.sign(new Signer.KeyPairSigner(SignTest.createRandomPrivateKey()));
+            other.mTokenData.EthAddr = sk.getAddress();
+            byte[] forged = other.encodeBytes();
+            byte[] signed = Arrays.copyOf(other.signature(), Crypto.SIGNATURE_LENGTH + forged.length);
+            System.arraycopy(forged, 0, signed, Crypto.SIGNATURE_LENGTH, forged.length);
+            other.mSigned = signed;
+            other.mSignedLen = signed.length;
+            assertThrows(TokenException.class, () -> verifier.verify(other.encode()));
+
+            // altered signature
+            byte[] data = Base58.decode(stok.substring(6));
+            data[3] ^= 1;
+            assertThrows(TokenException.class, () -> verifier.verify(stok.substring(0, 6) + Base58.encode(data)));
+
+            // unsigned
+            Token unsigned = tpl.newToken("subject", now, now + TokenFactory.HOUR);
+            assertThrows(TokenException.class, () -> verifier.verify(unsigned.encode()));
+        }
+    }
+
+    @Test
+    void testTrustedSigners() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        Signer other = new Signer.KeyPairSigner(SignTest.createRandomPrivateKey());
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        long now = System.currentTimeMillis();
+        // validly signed by a key that is not trusted
+        String stok = tpl.signEncode(other, null, now, now + TokenFactory.HOUR);
+
+        assertThrows(IllegalStateException.class, () -> new TokenVerifier.Builder().build());
+        TokenException e = assertThrows(TokenException.class, () -> verifier().verify(stok));
+        assertTrue(e.getMessage().contains("untrusted"), e.getMessage());
+
+        assertArrayEquals(other.getAddress(), new TokenVerifier.Builder()
+            .withTrustedSigners(sk.getAddress(), other.getAddress())
+            .build()
+            .verify(stok).getTokenData().EthAddr);
+        new TokenVerifier.Builder()
+            .withTrustedSigner(addr -> Arrays.equals(addr, other.getAddress()))
+            .build()
+            .verify(stok);
+    }
+
+    @Test
+    void testExpiresAndType() throws Exception {
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        EditorSignedTemplate tpl = EditorSignedTemplateTest.sampleTemplate(false);
+        long now = System.currentTimeMillis();
+        TokenVerifier verifier = verifier();
+
+        // no expiration
+        for (long expires : new long[] { 0, -1 }) {
+            String stok = tpl.signEncode(sk, null, now, expires);
+            assertThrows(TokenException.class, () -> verifier.verify(stok, now));
+        }
+
+        // a type other than the expected ones
+        Token client = new Token(TokenType.CLIENT, TokenFormat.JSON);
+        client.mTokenData.Expires = now + TokenFactory.HOUR;
+        client.sign(sk);
+        String stok = client.encode();
+        TokenException e = assertThrows(TokenException.class, () -> verifier.verify(stok, now));
+        assertTrue(e.getMessage().contains("type"), e.getMessage());
+        new TokenVerifier.Builder()
+            .withTrustedSigners(sk.getAddress())
+            .withTypes(TokenType.CLIENT)
+            .build()
+            .verify(stok, now);
+    }
+
+}
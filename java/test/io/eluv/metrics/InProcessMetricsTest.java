@@ -0,0 +1,158 @@
+package io.eluv.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.eluv.crypto.KeysTest;
+import io.eluv.crypto.Secp256k1;
+import io.eluv.crypto.SignException;
+import io.eluv.crypto.Signer;
+import io.eluv.format.eat.TokenException;
+import io.eluv.format.eat.TokenFactory;
+import io.eluv.format.eat.TokenFormat;
+import io.eluv.metrics.IssuanceMetrics.Stage;
+
+class InProcessMetricsTest {
+
+    static TokenFactory.EditorSigned editorSigned(TokenFormat format) throws TokenException {
+        return new TokenFactory.EditorSigned(
+            "ispc329GX6UVyuWzwPzqDHm5shxfNgrc",
+            "ilib329GX6UVyuWzwPzqDHm5shxfNgrc",
+            "iq__329GX6UVyuWzwPzqDHm5shxfNgrc",
+            format);
+    }
+
+    @AfterEach
+    void uninstall() {
+        Metrics.install(null);
+    }
+
+    @Test
+    void testNoopByDefault() throws Exception {
+        assertTrue(Metrics.get() == Metrics.NOOP);
+        assertEquals(0L, Metrics.start(Metrics.get()));
+        editorSigned(TokenFormat.JSON).signEncode(new Secp256k1(KeysTest.STATIC_PK));
+    }
+
+    @Test
+    void testIssuance() throws Exception {
+        InProcessMetrics m = new InProcessMetrics();
+        Metrics.install(m);
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+
+        editorSigned(TokenFormat.JSON_COMPRESSED).signEncode(sk);
+        editorSigned(TokenFormat.JSON).signEncode(sk);
+        editorSigned(TokenFormat.JSON).signEncodeTo(sk, ByteBuffer.allocate(1000));
+
+        assertEquals(3, m.issued());
+        assertEquals(3, m.stage(Stage.SERIALIZE).count());
+        assertEquals(1, m.stage(Stage.COMPRESS).count());
+        assertEquals(3, m.stage(Stage.HASH).count());
+        assertEquals(3, m.stage(Stage.SIGN).count());
+        assertEquals(3, m.stage(Stage.ENCODE).count());
+        assertEquals(3, m.paths(Stage.SIGN, true));
+        assertEquals(3, m.paths(Stage.ENCODE, true) + m.paths(Stage.ENCODE, false));
+        assertTrue(m.stage(Stage.SIGN).sumNanos() > 0);
+
+        String scraped = m.scrape();
+        assertTrue(scraped.contains("elv_tokens_issued_total 3\n"), scraped);
+        assertTrue(scraped.contains("elv_tokens_stage_seconds_count{stage=\"compress\"} 1\n"), scraped);
+        assertTrue(scraped.contains("elv_tokens_stage_seconds_bucket{stage=\"sign\",le=\"+Inf\"} 3\n"), scraped);
+        assertTrue(scraped.contains("elv_tokens_path_total{stage=\"sign\",path=\"native\"} 3\n"), scraped);
+    }
+
+    @Test
+    void testFailures() throws Exception {
+        InProcessMetrics m = new InProcessMetrics();
+        Metrics.install(m);
+        Signer failing = new Signer() {
+            @Override
+            public byte[] sign(byte[] digestHash) throws SignException {
+                throw new SignException("no signature");
+            }
+
+            @Override
+            public byte[] getAddress() {
+                return new byte[20];
+            }
+        };
+
+        assertThrows(TokenException.class, () -> editorSigned(TokenFormat.JSON).signEncode(failing));
+        assertEquals(0, m.issued());
+        assertEquals(1, m.failures(Stage.SIGN));
+        assertEquals(0, m.failures(Stage.SERIALIZE));
+        assertTrue(m.scrape().contains(
+            "elv_tokens_failures_total{stage=\"sign\",cause=\"io.eluv.crypto.SignException\"} 1\n"));
+
+        // signed but not encoded
+        Signer sk = new Secp256k1(KeysTest.STATIC_PK);
+        assertThrows(BufferOverflowException.class,
+            () -> editorSigned(TokenFormat.JSON).signEncodeTo(sk, ByteBuffer.allocate(10)));
+        assertEquals(0, m.issued());
+        assertEquals(1, m.failures(Stage.ENCODE));
+
+        // a wrapper of a native signer is not reported as native
+        Signer wrapper = new Signer() {
+            @Override
+            public byte[] sign(byte[] digestHash) throws SignException {
+                return sk.sign(digestHash);
+            }
+
+            @Override
+            public byte[] getAddress() {
+                return sk.getAddress();
+            }
+        };
+        editorSigned(TokenFormat.JSON).signEncode(wrapper);
+        assertEquals(1, m.issued());
+        assertEquals(1, m.paths(Stage.SIGN, false));
+    }
+
+    @Test
+    void testHistogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.percentileNanos(50));
+        assertEquals(0, LatencyHistogram.bucketIndex(0));
+        assertEquals(0, LatencyHistogram.bucketIndex(1024));
+        assertEquals(1, LatencyHistogram.bucketIndex(1025));
+        assertEquals(1, LatencyHistogram.bucketIndex(2048));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+
+        for (int i = 0; i < 90; i++) {
+            h.record(1500);
+        }
+        for (int i = 0; i < 10; i++) {
+            h.record(100000);
+        }
+        assertEquals(100, h.count());
+        assertEquals(90 * 1500 + 10 * 100000, h.sumNanos());
+        assertEquals(100000, h.maxNanos());
+        assertEquals(2048, h.percentileNanos(50));
+        assertEquals(2048, h.percentileNanos(90));
+        assertEquals(100000, h.percentileNanos(99));
+    }
+
+    @Test
+    void testLabelsIgnoreLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            // dotless i in turkish
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals("sign", Stage.SIGN.label());
+            for (Stage stage : Stage.values()) {
+                assertEquals(stage.name().toLowerCase(Locale.ROOT), stage.label());
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+}